@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.foojay.api.discoclient.bundle.Architecture;
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.BundleType;
+import io.foojay.api.discoclient.bundle.Distribution;
+import io.foojay.api.discoclient.bundle.Extension;
+import io.foojay.api.discoclient.bundle.OperatingSystem;
+import io.foojay.api.discoclient.bundle.ReleaseStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+// Catalog for the benchmarks, a response recorded with FixtureRecorder if there is one, otherwise a synthetic catalog
+// that looks like the disco api response. Either way the benchmarks run offline and the seed keeps runs comparable.
+public class BundleFixtures {
+    public  static final String            RECORDED_JSON     = "/fixtures/bundles.json";
+    private static final Distribution[]    DISTRIBUTIONS     = { Distribution.ADOPT, Distribution.CORRETTO, Distribution.DRAGONWELL, Distribution.LIBERICA,
+                                                                 Distribution.OPEN_JDK, Distribution.SAP_MACHINE, Distribution.ZULU };
+    private static final OperatingSystem[] OPERATING_SYSTEMS = { OperatingSystem.LINUX, OperatingSystem.LINUX_MUSL, OperatingSystem.MACOS, OperatingSystem.WINDOWS };
+    private static final Architecture[]    ARCHITECTURES     = { Architecture.X64, Architecture.X86, Architecture.AARCH64, Architecture.ARM, Architecture.PPC64LE };
+    private static final Extension[]       EXTENSIONS        = { Extension.TAR, Extension.ZIP, Extension.MSI, Extension.PKG, Extension.DMG };
+    private static final BundleType[]      BUNDLE_TYPES      = { BundleType.JDK, BundleType.JRE };
+    private static final ReleaseStatus[]   RELEASE_STATUS    = { ReleaseStatus.GA, ReleaseStatus.EA };
+    private static final int[]             FEATURES          = { 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+
+    private BundleFixtures() {}
+
+
+    // Recorded bundles are repeated with new ids if the recording has fewer than size
+    public static String getJson(final int size) {
+        final JsonArray recorded = readRecorded();
+        if (null == recorded || recorded.size() == 0) { return createJson(size); }
+        final JsonArray array = new JsonArray();
+        for (int i = 0 ; i < size ; i++) {
+            final JsonObject bundle = recorded.get(i % recorded.size()).getAsJsonObject().deepCopy();
+            if (i >= recorded.size()) { bundle.addProperty("id", i); }
+            array.add(bundle);
+        }
+        return array.toString();
+    }
+
+    public static List<Bundle> getBundles(final int size) {
+        final JsonArray    array   = JsonParser.parseString(getJson(size)).getAsJsonArray();
+        final List<Bundle> bundles = new ArrayList<>(array.size());
+        for (JsonElement element : array) { bundles.add(new Bundle(element.toString())); }
+        return bundles;
+    }
+
+    public static String createJson(final int size) {
+        final Random        random  = new Random(42);
+        final StringBuilder builder = new StringBuilder("[");
+        for (int i = 0 ; i < size ; i++) {
+            if (i > 0) { builder.append(","); }
+            appendBundle(builder, i, random);
+        }
+        return builder.append("]").toString();
+    }
+
+    public static List<Bundle> createBundles(final int size) {
+        final Random        random  = new Random(42);
+        final List<Bundle>  bundles = new ArrayList<>(size);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0 ; i < size ; i++) {
+            builder.setLength(0);
+            appendBundle(builder, i, random);
+            bundles.add(new Bundle(builder.toString()));
+        }
+        return bundles;
+    }
+
+    private static JsonArray readRecorded() {
+        try (InputStream inputStream = BundleFixtures.class.getResourceAsStream(RECORDED_JSON)) {
+            if (null == inputStream) { return null; }
+            final JsonElement element = JsonParser.parseReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            return element.isJsonArray() ? element.getAsJsonArray() : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void appendBundle(final StringBuilder builder, final int id, final Random random) {
+        final Distribution    distribution    = DISTRIBUTIONS[random.nextInt(DISTRIBUTIONS.length)];
+        final OperatingSystem operatingSystem = OPERATING_SYSTEMS[random.nextInt(OPERATING_SYSTEMS.length)];
+        final Architecture    architecture    = ARCHITECTURES[random.nextInt(ARCHITECTURES.length)];
+        final Extension       extension       = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+        final BundleType      bundleType      = BUNDLE_TYPES[random.nextInt(BUNDLE_TYPES.length)];
+        final ReleaseStatus   releaseStatus   = RELEASE_STATUS[random.nextInt(10) < 8 ? 0 : 1];
+        final int             feature         = FEATURES[random.nextInt(FEATURES.length)];
+        final String          version         = feature + ".0." + random.nextInt(12) + "." + random.nextInt(3);
+        final String          supportTerm     = (feature == 8 || feature == 11) ? "lts" : (feature == 13 || feature == 15) ? "mts" : "sts";
+        final String          fileName        = distribution.getApiString() + "-" + version + "-" + operatingSystem.getApiString() + "-" +
+                                                architecture.getApiString() + "." + extension.getApiString();
+        builder.append("{")
+               .append("\"id\":").append(id).append(",")
+               .append("\"distribution\":\"").append(distribution.name()).append("\",")
+               .append("\"version\":\"").append(version).append("\",")
+               .append("\"java_version\":\"").append(version).append("\",")
+               .append("\"distribution_version\":\"").append(version).append("\",")
+               .append("\"architecture\":\"").append(architecture.getApiString()).append("\",")
+               .append("\"bitness\":").append(architecture == Architecture.X86 || architecture == Architecture.ARM ? 32 : 64).append(",")
+               .append("\"operating_system\":\"").append(operatingSystem.getApiString()).append("\",")
+               .append("\"bundle_type\":\"").append(bundleType.getApiString()).append("\",")
+               .append("\"release_status\":\"").append(releaseStatus.getApiString()).append("\",")
+               .append("\"extension\":\"").append(extension.getApiString()).append("\",")
+               .append("\"support_term\":\"").append(supportTerm).append("\",")
+               .append("\"javafx\":").append(random.nextInt(5) == 0).append(",")
+               .append("\"filename\":\"").append(fileName).append("\",")
+               .append("\"download_link\":\"https://example.org/").append(fileName).append("\"")
+               .append("}");
+    }
+}
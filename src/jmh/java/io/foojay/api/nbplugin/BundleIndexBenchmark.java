@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Architecture;
+import io.foojay.api.discoclient.bundle.Bitness;
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.BundleType;
+import io.foojay.api.discoclient.bundle.Distribution;
+import io.foojay.api.discoclient.bundle.Extension;
+import io.foojay.api.discoclient.bundle.Latest;
+import io.foojay.api.discoclient.bundle.OperatingSystem;
+import io.foojay.api.discoclient.bundle.ReleaseStatus;
+import io.foojay.api.discoclient.bundle.SupportTerm;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+
+// Stream filtering of the catalog as done by the JdkSelector against the bitset based BundleIndex
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundleIndexBenchmark {
+    @Param({ "1000", "10000", "50000" })
+    private int          size;
+    private List<Bundle> bundles;
+    private BundleIndex  index;
+    private BundleQuery  selectorQuery;
+    private BundleQuery  tableQuery;
+
+
+    @Setup public void setup() {
+        bundles       = BundleFixtures.createBundles(size);
+        index         = new BundleIndex(bundles);
+        selectorQuery = new BundleQuery(Distribution.ZULU, new VersionNumber(11), Latest.OVERALL, OperatingSystem.LINUX, Architecture.NONE, Bitness.NONE,
+                                        Extension.NONE, BundleType.JDK, false, ReleaseStatus.GA, SupportTerm.NONE);
+        tableQuery    = new BundleQuery(Distribution.NONE, null, Latest.NONE, OperatingSystem.WINDOWS, Architecture.X64, Bitness.NONE,
+                                        Extension.ZIP, BundleType.NONE, false, ReleaseStatus.NONE, SupportTerm.LTS);
+    }
+
+
+    @Benchmark public List<Bundle> selectorStreamFilter() {
+        return bundles.stream()
+                      .filter(bundle -> bundle.getDistribution() == Distribution.ZULU)
+                      .filter(bundle -> bundle.getOperatingSystem() == OperatingSystem.LINUX)
+                      .filter(bundle -> bundle.getBundleType() == BundleType.JDK)
+                      .filter(bundle -> bundle.getReleaseStatus() == ReleaseStatus.GA)
+                      .filter(bundle -> bundle.getFeatureVersion().getAsInt() == 11)
+                      .collect(Collectors.toList());
+    }
+
+    @Benchmark public List<Bundle> selectorBundleIndex() { return index.getBundles(selectorQuery); }
+
+    @Benchmark public List<Bundle> tableBundleIndex() { return index.getBundles(tableQuery); }
+
+    @Benchmark public int tableBundleIndexCount() { return index.select(tableQuery).cardinality(); }
+}
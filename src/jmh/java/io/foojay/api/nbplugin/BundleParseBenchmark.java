@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.foojay.api.nbplugin;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import io.foojay.api.discoclient.bundle.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+// Parsing a bundles response the way the discoclient does (json tree, then new Bundle(String) per element, which
+// parses every element a second time) against the streaming BundleJsonParser
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundleParseBenchmark {
+    @Param({ "1000", "10000" })
+    private int    size;
+    private String json;
+    private byte[] bytes;
+
+
+    @Setup public void setup() {
+        json  = BundleFixtures.getJson(size);
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    @Benchmark public List<Bundle> discoClientParse() {
+        final JsonElement  element = new Gson().fromJson(json, JsonElement.class);
+        final List<Bundle> bundles = new ArrayList<>();
+        for (JsonElement bundle : element.getAsJsonArray()) { bundles.add(new Bundle(bundle.getAsJsonObject().toString())); }
+        return bundles;
+    }
+
+    @Benchmark public List<Bundle> bundleStoreParse() { return DiscoApi.parseBundles(json); }
+
+    // What DiscoApi.getBundles() does with the response body
+    @Benchmark public List<Bundle> bundleStoreStreamParse() throws IOException { return BundleJsonParser.parse(new ByteArrayInputStream(bytes), null); }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+
+// The order of the bundle table, with the Bundle comparator Main.updateData() used to have and with the
+// RowView comparator on the column store
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundleSortBenchmark {
+    private static final Comparator<Bundle> BUNDLE_ORDER = Comparator.comparing(Bundle::getDistributionName)
+                                                                     .thenComparing(Bundle::getVersionNumber).reversed()
+                                                                     .thenComparing(Bundle::getOperatingSystem)
+                                                                     .thenComparing(Bundle::getArchitecture);
+    @Param({ "100", "1000", "10000" })
+    private              int                size;
+    private              List<Bundle>       bundles;
+    private              BundleList         bundleList;
+
+
+    @Setup public void setup() {
+        bundles    = BundleFixtures.getBundles(size);
+        bundleList = BundleList.of(BundleStore.of(bundles));
+    }
+
+
+    @Benchmark public List<Bundle> bundleComparator() { return bundles.stream().sorted(BUNDLE_ORDER).collect(Collectors.toList()); }
+
+    @Benchmark public BundleList rowViewComparator() { return bundleList.sorted(BundleTableModel.DEFAULT_ORDER); }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Bundle;
+
+import java.util.List;
+
+
+// Compares the retained heap of a List<Bundle> with the BundleStore holding the same catalog
+public class BundleStoreFootprint {
+
+    public static void main(String[] args) {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+
+        final long   baseline = usedMemory();
+        List<Bundle> bundles  = BundleFixtures.createBundles(size);
+        final long   listSize = usedMemory() - baseline;
+
+        final BundleStore store = BundleStore.of(bundles);
+        bundles = null;
+        final long storeSize = usedMemory() - baseline;
+
+        System.out.println(String.format("%,d bundles", store.size()));
+        System.out.println(String.format("List<Bundle> : %,12d bytes (%,d bytes per bundle)", listSize, listSize / size));
+        System.out.println(String.format("BundleStore  : %,12d bytes (%,d bytes per bundle)", storeSize, storeSize / size));
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0 ; i < 5 ; i++) {
+            System.gc();
+            try { Thread.sleep(100); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
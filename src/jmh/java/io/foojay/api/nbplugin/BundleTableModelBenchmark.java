@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.foojay.api.nbplugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.swing.RowSorter.SortKey;
+import javax.swing.SortOrder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+// What the JTable asks of the BundleTableModel: sorting all rows by a column header and painting one screen of
+// rows through the sorter. Runs headless, no component is created.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BundleTableModelBenchmark {
+    private static final int              VISIBLE_ROWS = 40;
+    @Param({ "1000", "10000", "50000" })
+    private              int              size;
+    @Param({ "0", "1" })
+    private              int              sortColumn;
+    private              BundleTableModel model;
+    private              BundleRowSorter  sorter;
+    private              int              firstRow;
+
+
+    @Setup public void setup() {
+        model  = new BundleTableModel(BundleFixtures.getBundles(size));
+        sorter = new BundleRowSorter(model);
+        sorter.setSortKeys(List.of(new SortKey(sortColumn, SortOrder.ASCENDING)));
+    }
+
+
+    // A new result set, the sort keys of the column are computed again
+    @Benchmark public void sort() {
+        model.setBundles(model.getBundles());
+        sorter.allRowsChanged();
+    }
+
+    // One screen of rows, moving through the table like a scrolling view does
+    @Benchmark public void paintVisibleRows(final Blackhole blackhole) {
+        firstRow = (firstRow + VISIBLE_ROWS) % Math.max(1, size - VISIBLE_ROWS);
+        for (int row = firstRow ; row < firstRow + VISIBLE_ROWS ; row++) {
+            final int modelRow = sorter.convertRowIndexToModel(row);
+            for (int col = 0 ; col < model.getColumnCount() ; col++) { blackhole.consume(model.getValueAt(modelRow, col)); }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.foojay.api.nbplugin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+// Throughput of the BundleDownloader against a local file server that supports ranges, so the numbers show the
+// cost of the download path itself (channels, buffers, ranges) and not the one of the network
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DownloadBenchmark {
+    private static final Pattern          RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    @Param({ "64" })
+    private              int              sizeMb;
+    @Param({ "1", "4" })
+    private              int              segments;
+    private              Path             dir;
+    private              Path             file;
+    private              Path             target;
+    private              HttpServer       server;
+    private              ExecutorService  executor;
+    private              BundleDownloader downloader;
+    private              String           url;
+
+
+    @Setup public void setup() throws IOException {
+        dir  = Files.createTempDirectory("download-benchmark");
+        file = dir.resolve("bundle.tar.gz");
+        final byte[] block  = new byte[1024 * 1024];
+        final Random random = new Random(42);
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            for (int i = 0 ; i < sizeMb ; i++) {
+                random.nextBytes(block);
+                outputStream.write(block);
+            }
+        }
+        target = dir.resolve("download.tar.gz");
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::serve);
+        server.setExecutor(ExecutorFactory.newExecutor("file-server"));
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/bundle.tar.gz";
+
+        executor   = ExecutorFactory.newExecutor("download");
+        downloader = new BundleDownloader(HttpClientFactory.newClient(), executor, segments);
+    }
+
+    @TearDown(Level.Iteration) public void deleteTarget() throws IOException { Files.deleteIfExists(target); }
+
+    @TearDown public void tearDown() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+
+    @Benchmark public long download() throws IOException, InterruptedException {
+        return downloader.download(url, target, (fileSize, bytesRead) -> {});
+    }
+
+    // HEAD, GET and GET of a single range, which is all the downloader asks for
+    private void serve(final HttpExchange exchange) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long    size    = channel.size();
+            final String  range   = exchange.getRequestHeaders().getFirst("Range");
+            final Matcher matcher = null == range ? null : RANGE.matcher(range);
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", Long.toString(size));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            long start = 0;
+            long end   = size - 1;
+            if (null != matcher && matcher.matches()) {
+                start = Long.parseLong(matcher.group(1));
+                end   = Math.min(Long.parseLong(matcher.group(2)), size - 1);
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + size);
+                exchange.sendResponseHeaders(206, end - start + 1);
+            } else {
+                exchange.sendResponseHeaders(200, size);
+            }
+            try (OutputStream body = exchange.getResponseBody()) {
+                final WritableByteChannel target = Channels.newChannel(body);
+                for (long position = start ; position <= end ; ) { position += channel.transferTo(position, end - position + 1, target); }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
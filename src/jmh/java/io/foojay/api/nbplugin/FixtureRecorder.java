@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.nbplugin.DiscoApi.ApiResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+
+// Saves the complete catalog of the disco api as fixture, the benchmarks then run against real data but offline
+public class FixtureRecorder {
+
+    public static void main(String[] args) throws Exception {
+        final Path                target   = Paths.get(args.length > 0 ? args[0] : "src/jmh/resources" + BundleFixtures.RECORDED_JSON);
+        final String              url      = DiscoApi.getBundlesUrl(BundleQuery.ALL);
+        final ApiResponse<String> response = new DiscoApi().get(url, null, null);
+        if (response.getStatusCode() != DiscoApi.HTTP_OK) {
+            System.err.println("Response (" + response.getStatusCode() + ") " + url);
+            System.exit(1);
+        }
+        Files.createDirectories(target.getParent());
+        Files.write(target, response.getBody().getBytes(StandardCharsets.UTF_8));
+        System.out.println(String.format("%,d bundles written to %s", DiscoApi.parseBundles(response.getBody()).size(), target));
+    }
+}
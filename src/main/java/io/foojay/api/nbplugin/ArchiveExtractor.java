@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+
+// Unpacks a .tar.gz, .tar or .zip in one pass over a stream, so a bundle can be extracted while it is downloaded
+public class ArchiveExtractor {
+    private static final int                      BLOCK_SIZE  = 512;
+    private static final int                      BUFFER_SIZE = 64 * 1024;
+    private static final PosixFilePermission[]    PERMISSIONS = { PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+                                                                  PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+                                                                  PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ };
+    private static final Set<PosixFilePermission> EXECUTABLE  = EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE,
+                                                                           PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_EXECUTE,
+                                                                           PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_EXECUTE);
+
+    private ArchiveExtractor() {}
+
+
+    public static boolean isSupported(final String fileName) {
+        final String name = fileName.toLowerCase(Locale.ENGLISH);
+        return name.endsWith(".tar.gz") || name.endsWith(".tgz") || name.endsWith(".tar") || name.endsWith(".zip");
+    }
+
+    // The stream is read up to the end of the archive, not necessarily up to its own end
+    public static void extract(final InputStream input, final String fileName, final Path targetDir) throws IOException {
+        final String name = fileName.toLowerCase(Locale.ENGLISH);
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            extractTar(new GZIPInputStream(input, BUFFER_SIZE), targetDir);
+        } else if (name.endsWith(".tar")) {
+            extractTar(input, targetDir);
+        } else if (name.endsWith(".zip")) {
+            extractZip(new ZipInputStream(input), targetDir);
+        } else {
+            throw new IOException("Unsupported archive " + fileName);
+        }
+    }
+
+    private static void extractTar(final InputStream input, final Path targetDir) throws IOException {
+        final Path   realDir  = targetDir.toRealPath();
+        final byte[] header   = new byte[BLOCK_SIZE];
+        String       longName = null;
+        String       longLink = null;
+        while (true) {
+            if (input.readNBytes(header, 0, BLOCK_SIZE) < BLOCK_SIZE) { throw new IOException("Archive ended early"); }
+            if (isZero(header)) { return; }
+
+            final long size = parseNumber(header, 124, 12);
+            final char type = (char) header[156];
+            switch(type) {
+                case 'L':
+                    longName = readString(input, size);
+                    continue;
+                case 'K':
+                    longLink = readString(input, size);
+                    continue;
+                case 'x': {
+                    // Pax headers are key=value records, only the names are needed here
+                    for (String record : readString(input, size).split("\n")) {
+                        final int space = record.indexOf(' ');
+                        final int equal = record.indexOf('=');
+                        if (space < 0 || equal < space) { continue; }
+                        final String key = record.substring(space + 1, equal);
+                        if ("path".equals(key))     { longName = record.substring(equal + 1); }
+                        if ("linkpath".equals(key)) { longLink = record.substring(equal + 1); }
+                    }
+                    continue;
+                }
+                case 'g':
+                    skip(input, padded(size));
+                    continue;
+                default:
+                    break;
+            }
+
+            final String prefix = getString(header, 345, 155);
+            final String name   = null != longName ? longName : prefix.isEmpty() ? getString(header, 0, 100) : prefix + "/" + getString(header, 0, 100);
+            final String link   = null != longLink ? longLink : getString(header, 157, 100);
+            final int    mode   = (int) parseNumber(header, 100, 8);
+            longName = null;
+            longLink = null;
+
+            final Path path = resolve(targetDir, name);
+            switch(type) {
+                case '5':
+                    createDirectories(realDir, path);
+                    break;
+                case '2':
+                    createParent(realDir, path);
+                    checkLinkTarget(targetDir, path, link);
+                    Files.deleteIfExists(path);
+                    Files.createSymbolicLink(path, Paths.get(link));
+                    break;
+                case '1':
+                    createParent(realDir, path);
+                    Files.deleteIfExists(path);
+                    Files.createLink(path, resolve(targetDir, link));
+                    break;
+                case '0':
+                case '7':
+                case '\0':
+                    createParent(realDir, path);
+                    // An earlier entry may have put a link here, writing must not follow it
+                    Files.deleteIfExists(path);
+                    try (OutputStream outputStream = Files.newOutputStream(path)) {
+                        copy(input, outputStream, size);
+                    }
+                    skip(input, padded(size) - size);
+                    setPermissions(path, mode);
+                    break;
+                default:
+                    // Devices and fifos have no place in a JDK
+                    skip(input, padded(size));
+                    break;
+            }
+        }
+    }
+
+    // Zip entries don't carry unix modes in their local headers, files in bin directories are made executable
+    private static void extractZip(final ZipInputStream input, final Path targetDir) throws IOException {
+        final Path realDir = targetDir.toRealPath();
+        ZipEntry   entry;
+        while (null != (entry = input.getNextEntry())) {
+            final Path path = resolve(targetDir, entry.getName());
+            if (entry.isDirectory()) {
+                createDirectories(realDir, path);
+                continue;
+            }
+            createParent(realDir, path);
+            try (OutputStream outputStream = Files.newOutputStream(path)) {
+                input.transferTo(outputStream);
+            }
+            if ((null != path.getParent().getFileName() && "bin".equals(path.getParent().getFileName().toString())) || "jspawnhelper".equals(path.getFileName().toString())) {
+                setPermissions(path, EXECUTABLE);
+            }
+        }
+    }
+
+    // Entries must not end up outside of the target directory, no matter what their names say
+    private static Path resolve(final Path targetDir, final String name) throws IOException {
+        final Path path = targetDir.resolve(name).normalize();
+        if (!path.startsWith(targetDir.normalize())) { throw new IOException("Entry " + name + " is outside of the target directory"); }
+        return path;
+    }
+
+    // A symbolic link may only point to a place inside of the target directory, otherwise later entries below
+    // the link would be written outside of it
+    private static void checkLinkTarget(final Path targetDir, final Path path, final String link) throws IOException {
+        final Path linkPath = Paths.get(link);
+        if (linkPath.isAbsolute() || !path.getParent().resolve(linkPath).normalize().startsWith(targetDir.normalize())) {
+            throw new IOException("Link " + path.getFileName() + " -> " + link + " points outside of the target directory");
+        }
+    }
+
+    // The names are checked as text by resolve(), the real path catches directories that are links to elsewhere
+    private static void createParent(final Path realDir, final Path path) throws IOException { createDirectories(realDir, path.getParent()); }
+    private static void createDirectories(final Path realDir, final Path dir) throws IOException {
+        // createDirectories() refuses a link to a directory that is already there
+        if (!Files.isDirectory(dir)) { Files.createDirectories(dir); }
+        if (!dir.toRealPath().startsWith(realDir)) { throw new IOException("Directory " + dir + " is outside of the target directory"); }
+    }
+
+    private static void setPermissions(final Path path, final int mode) throws IOException {
+        final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (int i = 0 ; i < PERMISSIONS.length ; i++) {
+            if ((mode & (1 << i)) != 0) { permissions.add(PERMISSIONS[i]); }
+        }
+        if (!permissions.isEmpty()) { setPermissions(path, permissions); }
+    }
+    private static void setPermissions(final Path path, final Set<PosixFilePermission> permissions) throws IOException {
+        if (null == Files.getFileAttributeView(path, PosixFileAttributeView.class)) { return; }
+        Files.setPosixFilePermissions(path, permissions);
+    }
+
+    private static void copy(final InputStream input, final OutputStream output, final long size) throws IOException {
+        final byte[] buffer    = new byte[BUFFER_SIZE];
+        long         remaining = size;
+        while (remaining > 0) {
+            final int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) { throw new IOException("Archive ended early"); }
+            output.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static void skip(final InputStream input, final long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            final long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                if (input.read() < 0) { throw new IOException("Archive ended early"); }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+
+    private static String readString(final InputStream input, final long size) throws IOException {
+        final byte[] data = input.readNBytes((int) size);
+        if (data.length < size) { throw new IOException("Archive ended early"); }
+        skip(input, padded(size) - size);
+        int length = data.length;
+        while (length > 0 && data[length - 1] == 0) { length--; }
+        return new String(data, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static String getString(final byte[] header, final int offset, final int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) { end++; }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    // Octal, or big endian binary if the highest bit is set (GNU tar for files of 8 GB and more)
+    private static long parseNumber(final byte[] header, final int offset, final int length) {
+        if ((header[offset] & 0x80) != 0) {
+            long value = 0;
+            for (int i = offset + 1 ; i < offset + length ; i++) { value = (value << 8) | (header[i] & 0xff); }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset ; i < offset + length ; i++) {
+            final byte b = header[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) { break; }
+                continue;
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static long padded(final long size) { return (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE; }
+
+    private static boolean isZero(final byte[] block) {
+        for (byte b : block) {
+            if (b != 0) { return false; }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+// Local copy of every downloaded bundle. The archives are stored once per SHA-256 in blobs/, bundles/ maps the bundle
+// ids to them, so a repeated download into another folder is a link or a local copy instead of a network transfer.
+public class ArchiveStore {
+    private static final Logger           LOGGER        = LoggerFactory.getLogger(ArchiveStore.class);
+    private static final String           BLOB_DIR      = "blobs";
+    private static final String           BUNDLE_DIR    = "bundles";
+    private static final String           ENTRY_SUFFIX  = ".properties";
+    private static final String           KEY_ID        = "id";
+    private static final String           KEY_VERSION   = "version";
+    private static final String           KEY_FILE_NAME = "fileName";
+    private static final String           KEY_SHA_256   = "sha256";
+    private static final String           KEY_SIZE      = "size";
+    private static final String           KEY_LAST_USED = "lastUsed";
+    private static final int              BUFFER_SIZE   = 64 * 1024;
+    private final        Path             storeDir;
+    private final        long             maxSize;
+    private final        Map<Long, Entry> entries;
+    private final        CacheStats       stats;
+
+
+    public ArchiveStore(final Path storeDir, final long maxSize) {
+        this.storeDir = storeDir;
+        this.maxSize  = maxSize;
+        this.entries  = new ConcurrentHashMap<>();
+        this.stats    = Metrics.INSTANCE.getCache("archiveStore");
+        load();
+    }
+
+
+    public Path getStoreDir() { return storeDir; }
+
+    public long getMaxSize() { return maxSize; }
+
+    public CacheStats getStats() { return stats; }
+
+    // Cheap enough to be called for every visible table row
+    public boolean contains(final long bundleId) { return entries.containsKey(bundleId); }
+
+    public Entry getEntry(final long bundleId) { return entries.get(bundleId); }
+
+    // Size of all blobs, a blob that is shared by several bundles is only counted once
+    public long getSize() {
+        final Set<String> blobs = new HashSet<>();
+        long              size  = 0;
+        for (Entry entry : entries.values()) {
+            if (blobs.add(entry.sha256)) { size += entry.size; }
+        }
+        return size;
+    }
+
+    // Path of the stored archive of the bundle or null if there is none, counts as a use for the eviction
+    public synchronized Path getArchive(final long bundleId) {
+        final Entry entry = entries.get(bundleId);
+        if (null == entry) {
+            stats.recordMiss();
+            return null;
+        }
+        final Path blob = getBlob(entry.sha256);
+        if (!Files.exists(blob)) {
+            stats.recordMiss();
+            remove(entry);
+            return null;
+        }
+        stats.recordHit();
+        entry.lastUsed = System.currentTimeMillis();
+        try {
+            writeEntry(entry);
+        } catch (IOException e) {
+            LOGGER.debug("Error updating store entry of bundle {} : {}", bundleId, e.getMessage());
+        }
+        return blob;
+    }
+
+    // Puts the stored archive of the bundle at the target. A checksum that doesn't match the stored one means the bundle
+    // changed on the server, in that case nothing happens and false is returned.
+    public synchronized boolean copyTo(final long bundleId, final String checksum, final Path target) {
+        final Entry entry = entries.get(bundleId);
+        if (null == entry || (null != checksum && !checksum.trim().equalsIgnoreCase(entry.sha256))) {
+            stats.recordMiss();
+            return false;
+        }
+        final Path blob = getBlob(entry.sha256);
+        try {
+            if (Files.size(blob) != entry.size) { throw new IOException("Size of blob differs"); }
+            if (!Files.exists(target) || !Files.isSameFile(blob, target)) {
+                Files.deleteIfExists(target);
+                link(blob, target);
+            }
+            // A journal left from an earlier download would resume into the linked blob
+            Files.deleteIfExists(DownloadJournal.getJournalFile(target));
+            entry.lastUsed = System.currentTimeMillis();
+            writeEntry(entry);
+            stats.recordHit();
+            return true;
+        } catch (IOException e) {
+            LOGGER.debug("Error copying bundle {} from store : {}", bundleId, e.getMessage());
+            stats.recordMiss();
+            remove(entry);
+            return false;
+        }
+    }
+
+    // Adds a downloaded archive, if its content is in the store already only the bundle id is mapped to it. The downloader
+    // passes the SHA-256 it computed during the transfer, only without one the archive is hashed here. Hashing and
+    // copying happen outside the lock, so requests for other archives don't wait for them.
+    public void put(final long bundleId, final VersionNumber versionNumber, final String fileName, final Path source, final String sha256) {
+        Path tmpFile = null;
+        try {
+            final String hash = null == sha256 ? sha256(source) : sha256.trim().toLowerCase(Locale.ENGLISH);
+            final long   size = Files.size(source);
+            if (size > maxSize) { return; }
+            final Path blob = getBlob(hash);
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                tmpFile = Files.createTempFile(blob.getParent(), hash, ".tmp");
+                Files.delete(tmpFile);
+                link(source, tmpFile);
+            }
+            synchronized (this) {
+                if (null != tmpFile && !Files.exists(blob)) {
+                    Files.move(tmpFile, blob, StandardCopyOption.ATOMIC_MOVE);
+                    tmpFile = null;
+                }
+                final Entry entry    = new Entry(bundleId, null == versionNumber ? "" : versionNumber.toString(), fileName, hash, size, System.currentTimeMillis());
+                writeEntry(entry);
+                final Entry previous = entries.put(bundleId, entry);
+                // The bundle changed on the server, the old content is of no use unless another bundle has it too
+                if (null != previous && !previous.sha256.equals(hash)) { deleteBlobIfUnused(previous.sha256); }
+                evict();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Error adding bundle {} to store : {}", bundleId, e.getMessage());
+        } finally {
+            // Another put of the same content was faster, its blob is used
+            if (null != tmpFile) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch (IOException e) {
+                    LOGGER.debug("Error deleting {} : {}", tmpFile, e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Least recently used blobs go first until the store fits into maxSize
+    private void evict() {
+        long size = getSize();
+        if (size <= maxSize) { return; }
+        final List<Entry> lru = new ArrayList<>(entries.values());
+        lru.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+        for (Entry entry : lru) {
+            if (size <= maxSize) { break; }
+            if (!entries.containsKey(entry.bundleId)) { continue; }
+            final List<Entry> sharing = new ArrayList<>();
+            for (Entry other : entries.values()) {
+                if (other.sha256.equals(entry.sha256)) { sharing.add(other); }
+            }
+            sharing.forEach(this::remove);
+            sharing.forEach(evicted -> stats.recordEviction());
+            size -= entry.size;
+            LOGGER.debug("Evicted {} ({} bytes) from store", entry.fileName, entry.size);
+        }
+    }
+
+    private void remove(final Entry entry) {
+        entries.remove(entry.bundleId);
+        try {
+            Files.deleteIfExists(getEntryFile(entry.bundleId));
+            deleteBlobIfUnused(entry.sha256);
+        } catch (IOException e) {
+            LOGGER.debug("Error removing bundle {} from store : {}", entry.bundleId, e.getMessage());
+        }
+    }
+
+    private void deleteBlobIfUnused(final String sha256) throws IOException {
+        if (entries.values().stream().noneMatch(other -> other.sha256.equals(sha256))) { Files.deleteIfExists(getBlob(sha256)); }
+    }
+
+    private void load() {
+        final Path bundleDir = storeDir.resolve(BUNDLE_DIR);
+        if (!Files.isDirectory(bundleDir)) { return; }
+        try (DirectoryStream<Path> entryFiles = Files.newDirectoryStream(bundleDir, "*" + ENTRY_SUFFIX)) {
+            for (Path entryFile : entryFiles) {
+                final Properties properties = new Properties();
+                try (InputStream inputStream = Files.newInputStream(entryFile)) {
+                    properties.load(inputStream);
+                    final Entry entry = new Entry(Long.parseLong(properties.getProperty(KEY_ID)), properties.getProperty(KEY_VERSION, ""),
+                                                  properties.getProperty(KEY_FILE_NAME, ""), properties.getProperty(KEY_SHA_256),
+                                                  Long.parseLong(properties.getProperty(KEY_SIZE)), Long.parseLong(properties.getProperty(KEY_LAST_USED, "0")));
+                    if (Files.exists(getBlob(entry.sha256))) { entries.put(entry.bundleId, entry); }
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.debug("Error reading store entry {} : {}", entryFile, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Error reading store {} : {}", storeDir, e.getMessage());
+        }
+    }
+
+    private void writeEntry(final Entry entry) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_ID, Long.toString(entry.bundleId));
+        properties.setProperty(KEY_VERSION, entry.versionNumber);
+        properties.setProperty(KEY_FILE_NAME, entry.fileName);
+        properties.setProperty(KEY_SHA_256, entry.sha256);
+        properties.setProperty(KEY_SIZE, Long.toString(entry.size));
+        properties.setProperty(KEY_LAST_USED, Long.toString(entry.lastUsed));
+        final Path entryFile = getEntryFile(entry.bundleId);
+        Files.createDirectories(entryFile.getParent());
+        final Path tmpFile = Files.createTempFile(entryFile.getParent(), entryFile.getFileName().toString(), ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tmpFile)) {
+            properties.store(outputStream, null);
+        }
+        Files.move(tmpFile, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path getBlob(final String sha256) { return storeDir.resolve(BLOB_DIR).resolve(sha256); }
+
+    private Path getEntryFile(final long bundleId) { return storeDir.resolve(BUNDLE_DIR).resolve(bundleId + ENTRY_SUFFIX); }
+
+    // A hard link costs no space and no time, a copy is only needed across file systems
+    private static void link(final Path existing, final Path link) throws IOException {
+        try {
+            Files.createLink(link, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(existing, link, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String sha256(final Path file) throws IOException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[]        buffer = new byte[BUFFER_SIZE];
+            try (InputStream inputStream = Files.newInputStream(file)) {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) { digest.update(buffer, 0, read); }
+            }
+            final StringBuilder builder = new StringBuilder();
+            for (byte b : digest.digest()) { builder.append(String.format("%02x", b)); }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    // ******************** Inner classes *************************************
+    public static class Entry {
+        private final    long   bundleId;
+        private final    String versionNumber;
+        private final    String fileName;
+        private final    String sha256;
+        private final    long   size;
+        private volatile long   lastUsed;
+
+        Entry(final long bundleId, final String versionNumber, final String fileName, final String sha256, final long size, final long lastUsed) {
+            this.bundleId      = bundleId;
+            this.versionNumber = versionNumber;
+            this.fileName      = fileName;
+            this.sha256        = sha256;
+            this.size          = size;
+            this.lastUsed      = lastUsed;
+        }
+
+        public long getBundleId() { return bundleId; }
+
+        public String getVersionNumber() { return versionNumber; }
+
+        public String getFileName() { return fileName; }
+
+        public String getSha256() { return sha256; }
+
+        public long getSize() { return size; }
+
+        public long getLastUsed() { return lastUsed; }
+    }
+}
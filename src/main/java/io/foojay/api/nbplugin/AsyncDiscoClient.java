@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.DiscoClient;
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.Release;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.event.DCEvent;
+import io.foojay.api.discoclient.event.DCEventConsumer;
+import io.foojay.api.discoclient.event.DCEventType;
+import io.foojay.api.discoclient.util.BundleFileInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+
+public class AsyncDiscoClient {
+    private final DiscoClient      discoClient;
+    private final BundleProvider   provider;
+    private final ExecutorService  executor;
+    private final BundleDownloader downloader;
+    private final ArchiveStore     archiveStore;
+
+
+    public AsyncDiscoClient(final DiscoClient discoClient) {
+        this(discoClient, HttpClientFactory.getSharedClient());
+    }
+    // All api calls and downloads go through the given client, e.g. one that talks to a local stub server
+    public AsyncDiscoClient(final DiscoClient discoClient, final HttpClient httpClient) {
+        this(discoClient, httpClient, PluginPropertyManager.INSTANCE.getBoolean(PluginPropertyManager.PROPERTY_KEY_CATALOG_ENABLED));
+    }
+    // Short lived callers like the cli run a single query, loading the whole catalog would only slow them down
+    public AsyncDiscoClient(final DiscoClient discoClient, final HttpClient httpClient, final boolean catalog) {
+        this.discoClient  = discoClient;
+        this.executor     = ExecutorFactory.newExecutor("disco-query");
+        this.provider     = createProvider(new DiscoApi(httpClient), executor, catalog);
+        this.downloader   = new BundleDownloader(httpClient, executor, PluginPropertyManager.INSTANCE.getInt(PluginPropertyManager.PROPERTY_KEY_DOWNLOAD_SEGMENTS));
+        this.archiveStore = createArchiveStore();
+    }
+    public AsyncDiscoClient(final DiscoClient discoClient, final BundleProvider provider, final ExecutorService executor) {
+        this(discoClient, provider, executor, new BundleDownloader(executor));
+    }
+    public AsyncDiscoClient(final DiscoClient discoClient, final BundleProvider provider, final ExecutorService executor, final BundleDownloader downloader) {
+        this(discoClient, provider, executor, downloader, createArchiveStore());
+    }
+    public AsyncDiscoClient(final DiscoClient discoClient, final BundleProvider provider, final ExecutorService executor, final BundleDownloader downloader,
+                            final ArchiveStore archiveStore) {
+        this.discoClient  = discoClient;
+        this.provider     = provider;
+        this.executor     = executor;
+        this.downloader   = downloader;
+        this.archiveStore = archiveStore;
+    }
+
+
+    public DiscoClient getDiscoClient() { return discoClient; }
+
+    public BundleProvider getProvider() { return provider; }
+
+    public ExecutorService getExecutor() { return executor; }
+
+    public CompletableFuture<List<Bundle>> getBundles(final BundleQuery query) {
+        return submit(() -> provider.getBundles(query));
+    }
+
+    // The consumer is called on the worker thread for every bundle as soon as it has been read
+    public CompletableFuture<List<Bundle>> getBundles(final BundleQuery query, final ObjIntConsumer<BundleStore> consumer) {
+        return submit(() -> provider.getBundles(query, consumer));
+    }
+
+    public CompletableFuture<BundleFileInfo> getBundleFileInfo(final long bundleId, final VersionNumber versionNumber) {
+        return submit(() -> provider.getBundleFileInfo(bundleId, versionNumber));
+    }
+
+    public CompletableFuture<BundleFileInfo> getBundleFileInfoSCDL(final long bundleId, final VersionNumber versionNumber) {
+        return submit(() -> provider.getBundleFileInfoSCDL(bundleId, versionNumber));
+    }
+
+    public CompletableFuture<Release> getRelease(final String release) {
+        return submit(() -> provider.getRelease(release));
+    }
+
+    // Replaces DiscoClient.downloadBundle, the events are still fired on the DiscoClient so its listeners keep working
+    public Task<Void> downloadBundle(final long bundleId, final String fileName, final VersionNumber versionNumber) {
+        return downloadBundle(bundleId, fileName, versionNumber, discoClient::fireDCEvent);
+    }
+    // Events only go to the given consumer, so that several downloads can run at the same time
+    public Task<Void> downloadBundle(final long bundleId, final String fileName, final VersionNumber versionNumber, final DCEventConsumer consumer) {
+        return submit(() -> {
+            final ProgressThrottle throttle = new ProgressThrottle(consumer);
+            Metrics.Sample         sample   = null;
+            try {
+                final BundleFileInfo bundleFileInfo = provider.getBundleFileInfo(bundleId, versionNumber);
+                if (null == bundleFileInfo) { throw new IOException("No download url for bundle " + bundleId); }
+                final String                    url      = bundleFileInfo.getFileDownloadUrl();
+                final CompletableFuture<String> checksum = PluginPropertyManager.INSTANCE.getBoolean(PluginPropertyManager.PROPERTY_KEY_DOWNLOAD_VERIFY) ? downloader.fetchChecksum(url) : null;
+                final Path                      target   = Paths.get(fileName);
+                // A bundle that has been downloaded before only has to be linked or copied from the store, otherwise the
+                // checksum is fetched while the download starts
+                if (null != archiveStore && archiveStore.contains(bundleId) && archiveStore.copyTo(bundleId, BundleDownloader.await(checksum), target)) {
+                    final long fileSize = archiveStore.getEntry(bundleId).getSize();
+                    consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_STARTED, fileSize));
+                    consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_PROGRESS, fileSize, fileSize));
+                    consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_FINISHED, fileSize));
+                    return null;
+                }
+                sample = Metrics.INSTANCE.start(Metrics.DOWNLOAD_BUNDLE);
+                final long   fileSize = downloader.download(url, target, bundleId, versionNumber, checksum, throttle);
+                sample.stop(fileSize, false);
+                if (null != archiveStore) { archiveStore.put(bundleId, versionNumber, bundleFileInfo.getFileName(), target, throttle.getSha256()); }
+                consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_FINISHED, fileSize));
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_FAILED, 0));
+                throw new CompletionException(e);
+            } catch (IOException | RuntimeException e) {
+                if (null != sample) { sample.stop(throttle.getBytesRead(), true); }
+                consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_FAILED, 0));
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    // Unpacks the bundle into installDir while it is downloaded, the archive is only written to fileName if keepArchive is set.
+    // The future completes with the JDK home.
+    public Task<Path> installBundle(final long bundleId, final String fileName, final VersionNumber versionNumber, final Path installDir,
+                                                 final boolean keepArchive, final DCEventConsumer consumer) {
+        return submit(() -> {
+            final ProgressThrottle throttle = new ProgressThrottle(consumer);
+            Metrics.Sample         sample   = null;
+            try {
+                final BundleFileInfo bundleFileInfo = provider.getBundleFileInfo(bundleId, versionNumber);
+                if (null == bundleFileInfo) { throw new IOException("No download url for bundle " + bundleId); }
+                final String                    url      = bundleFileInfo.getFileDownloadUrl();
+                final CompletableFuture<String> checksum = PluginPropertyManager.INSTANCE.getBoolean(PluginPropertyManager.PROPERTY_KEY_DOWNLOAD_VERIFY) ? downloader.fetchChecksum(url) : null;
+                final Path                      target   = Paths.get(fileName);
+                final ArchiveStore.Entry        entry    = null == archiveStore ? null : archiveStore.getEntry(bundleId);
+                final String                    expected = null == entry ? null : BundleDownloader.await(checksum);
+                final Path                      archive  = null == entry || (null != expected && !expected.trim().equalsIgnoreCase(entry.getSha256())) ? null : archiveStore.getArchive(bundleId);
+                final Path                      home;
+                if (null != archive) {
+                    // The stored archive is unpacked instead of downloading it again
+                    if (keepArchive) { archiveStore.copyTo(bundleId, expected, target); }
+                    try (InputStream input = Files.newInputStream(archive)) {
+                        home = downloader.unpack(input, entry.getSize(), bundleFileInfo.getFileName(), installDir, null, null, throttle);
+                    }
+                } else {
+                    sample = Metrics.INSTANCE.start(Metrics.INSTALL_BUNDLE);
+                    home   = downloader.install(url, bundleFileInfo.getFileName(), installDir, keepArchive ? target : null, checksum, throttle);
+                    sample.stop(throttle.getBytesRead(), false);
+                    if (keepArchive && null != archiveStore) { archiveStore.put(bundleId, versionNumber, bundleFileInfo.getFileName(), target, throttle.getSha256()); }
+                }
+                consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_FINISHED, throttle.getBytesRead()));
+                return home;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_FAILED, 0));
+                throw new CompletionException(e);
+            } catch (IOException | RuntimeException e) {
+                if (null != sample) { sample.stop(throttle.getBytesRead(), true); }
+                consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_FAILED, 0));
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    // Null if the store is disabled
+    public ArchiveStore getArchiveStore() { return archiveStore; }
+
+    public void shutdown() { executor.shutdownNow(); }
+
+    private static BundleProvider createProvider(final DiscoApi discoApi, final ExecutorService executor, final boolean catalog) {
+        BundleProvider provider = new DiscoClientBundleProvider(discoApi);
+        if (PluginPropertyManager.INSTANCE.getBoolean(PluginPropertyManager.PROPERTY_KEY_CACHE_ENABLED)) {
+            provider = new DiskCachedBundleProvider(provider, discoApi);
+        }
+        if (catalog) {
+            provider = new CatalogBundleProvider(provider, executor);
+        }
+        return new MemoryCachedBundleProvider(provider);
+    }
+
+    private static ArchiveStore createArchiveStore() {
+        if (!PluginPropertyManager.INSTANCE.getBoolean(PluginPropertyManager.PROPERTY_KEY_STORE_ENABLED)) { return null; }
+        return new ArchiveStore(PluginPropertyManager.INSTANCE.getConfigDir().resolve("store"),
+                                PluginPropertyManager.INSTANCE.getLong(PluginPropertyManager.PROPERTY_KEY_STORE_MAX_SIZE) * 1024 * 1024);
+    }
+
+    // Cancelling the returned future interrupts the worker so that a superseded request doesn't keep running
+    private <T> Task<T> submit(final Supplier<T> supplier) {
+        final Task<T>       result  = new Task<>();
+        final AtomicBoolean started = new AtomicBoolean();
+        final Future<?>     task    = executor.submit(() -> {
+            // A task that was cancelled before it started must not start afterwards
+            if (!started.compareAndSet(false, true)) { return; }
+            try {
+                result.complete(supplier.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                result.exit.complete(null);
+            }
+        });
+        result.whenComplete((value, throwable) -> {
+            if (!result.isCancelled()) { return; }
+            if (started.compareAndSet(false, true)) {
+                task.cancel(false);
+                result.exit.complete(null);
+            } else {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+
+    // ******************** Inner classes *************************************
+    // A cancelled future completes right away while the interrupted worker may still write files, getExit()
+    // completes once the worker has really returned or will never start
+    public static class Task<T> extends CompletableFuture<T> {
+        private final CompletableFuture<Void> exit = new CompletableFuture<>();
+
+        public CompletableFuture<Void> getExit() { return exit; }
+    }
+
+    // Every read of a buffer reports progress, only a new percent (or a new frame if the size is unknown) becomes an event
+    private static class ProgressThrottle implements BundleDownloader.ProgressListener {
+        private final    DCEventConsumer consumer;
+        private final    AtomicLong      nextReport;
+        private volatile long            bytesRead;
+        private volatile String          sha256;
+
+        ProgressThrottle(final DCEventConsumer consumer) {
+            this.consumer   = consumer;
+            this.nextReport = new AtomicLong(Long.MIN_VALUE);
+        }
+
+        long getBytesRead() { return bytesRead; }
+
+        String getSha256() { return sha256; }
+
+        @Override public void onDigest(final String sha256) { this.sha256 = sha256; }
+
+        @Override public void onProgress(final long fileSize, final long bytesRead) {
+            this.bytesRead = bytesRead;
+            if (0 == bytesRead) {
+                consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_STARTED, fileSize));
+                return;
+            }
+            final long next = nextReport.get();
+            if (fileSize > 0) {
+                if (bytesRead < next && bytesRead < fileSize) { return; }
+                // The ranges report concurrently, only the one that moves the step on fires
+                if (!nextReport.compareAndSet(next, (bytesRead * 100 / fileSize + 1) * fileSize / 100)) { return; }
+            } else {
+                final long now = System.nanoTime();
+                if (now < next || !nextReport.compareAndSet(next, now + CoalescingUpdater.FRAME_NANOS)) { return; }
+            }
+            consumer.onDCEvent(new DCEvent(DCEventType.DOWNLOAD_PROGRESS, fileSize, bytesRead));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+
+// Starts asynchronous tasks with at most maxConcurrent of them in flight, the others wait in submission order
+public class AsyncLimiter {
+    private final int             maxConcurrent;
+    private final Queue<Runnable> waiting;
+    private       int             running;
+
+
+    public AsyncLimiter(final int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.waiting       = new ArrayDeque<>();
+    }
+
+
+    public int getMaxConcurrent() { return maxConcurrent; }
+
+    public <T> CompletableFuture<T> submit(final Supplier<CompletableFuture<T>> task) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final Runnable             start  = () -> {
+            CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (Throwable t) {
+                future = CompletableFuture.failedFuture(t);
+            }
+            future.whenComplete((value, throwable) -> {
+                release();
+                if (null == throwable) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(throwable);
+                }
+            });
+        };
+
+        final boolean startNow;
+        synchronized (this) {
+            startNow = running < maxConcurrent;
+            if (startNow) {
+                running++;
+            } else {
+                waiting.add(start);
+            }
+        }
+        if (startNow) { start.run(); }
+        return result;
+    }
+
+    // A finished task hands its slot directly to the next waiting one
+    private void release() {
+        final Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (null == next) { running--; }
+        }
+        if (null != next) { next.run(); }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+
+// Collects streamed bundles into small stores and hands them over in batches. The rows are copied on the thread
+// that parses them, so a handed over batch is never touched again by that thread.
+public class BundleBatcher implements ObjIntConsumer<BundleStore> {
+    public  static final int                   FIRST_BATCH_SIZE = 32;
+    public  static final int                   BATCH_SIZE       = 512;
+    public  static final long                  BATCH_INTERVAL   = TimeUnit.MILLISECONDS.toNanos(50);
+    private final        Consumer<BundleStore> sink;
+    private              BundleStore           batch;
+    private              int                   batchSize;
+    private              long                  lastFlush;
+
+
+    public BundleBatcher(final Consumer<BundleStore> sink) {
+        this.sink      = sink;
+        this.batchSize = FIRST_BATCH_SIZE;
+        this.lastFlush = System.nanoTime();
+    }
+
+
+    // The first rows go out early, afterwards batches are flushed when they are full or after BATCH_INTERVAL
+    @Override public void accept(final BundleStore store, final int position) {
+        if (null == batch) { batch = new BundleStore(batchSize); }
+        batch.add(store, position);
+        if (batch.size() >= batchSize || System.nanoTime() - lastFlush >= BATCH_INTERVAL) {
+            flush();
+            batchSize = BATCH_SIZE;
+        }
+    }
+
+    public void flush() {
+        lastFlush = System.nanoTime();
+        if (null == batch || batch.size() == 0) { return; }
+        final BundleStore fullBatch = batch;
+        batch = null;
+        sink.accept(fullBatch);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+
+// On disk cache for disco api responses, one body and one metadata file per request url
+public class BundleCache {
+    private static final Logger LOGGER             = LoggerFactory.getLogger(BundleCache.class);
+    private static final String BODY_SUFFIX        = ".json";
+    private static final String META_SUFFIX        = ".properties";
+    private static final String META_URL           = "url";
+    private static final String META_ETAG          = "etag";
+    private static final String META_LAST_MODIFIED = "lastModified";
+    private static final String META_FETCHED_AT    = "fetchedAt";
+    private final        Path   cacheDir;
+
+
+    public BundleCache(final Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+
+    public Path getCacheDir() { return cacheDir; }
+
+    public Entry get(final String url) {
+        final String key      = toKey(url);
+        final Path   bodyFile = cacheDir.resolve(key + BODY_SUFFIX);
+        final Path   metaFile = cacheDir.resolve(key + META_SUFFIX);
+        if (!Files.exists(bodyFile) || !Files.exists(metaFile)) { return null; }
+        try {
+            Properties meta = new Properties();
+            try (InputStream inputStream = Files.newInputStream(metaFile)) {
+                meta.load(inputStream);
+            }
+            if (!url.equals(meta.getProperty(META_URL))) { return null; }
+            return new Entry(url, bodyFile, meta.getProperty(META_ETAG, ""), meta.getProperty(META_LAST_MODIFIED, ""),
+                             Long.parseLong(meta.getProperty(META_FETCHED_AT, "0")));
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.debug("Error reading cache entry for {} : {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(final String url, final String body, final String eTag, final String lastModified) {
+        final String key = toKey(url);
+        try {
+            Files.createDirectories(cacheDir);
+            writeAtomically(cacheDir.resolve(key + BODY_SUFFIX), body.getBytes(StandardCharsets.UTF_8));
+            writeMeta(key, url, eTag, lastModified, System.currentTimeMillis());
+        } catch (IOException e) {
+            LOGGER.debug("Error writing cache entry for {} : {}", url, e.getMessage());
+        }
+    }
+
+    // Takes over a body that has been written to a file from createTempFile()
+    public void put(final String url, final Path bodyFile, final String eTag, final String lastModified) {
+        final String key = toKey(url);
+        try {
+            Files.move(bodyFile, cacheDir.resolve(key + BODY_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeMeta(key, url, eTag, lastModified, System.currentTimeMillis());
+        } catch (IOException e) {
+            LOGGER.debug("Error writing cache entry for {} : {}", url, e.getMessage());
+        }
+    }
+
+    public Path createTempFile(final String url) throws IOException {
+        Files.createDirectories(cacheDir);
+        return Files.createTempFile(cacheDir, toKey(url), ".tmp");
+    }
+
+    // Called after a 304 Not Modified, the body stays as it is
+    public void touch(final Entry entry) {
+        try {
+            writeMeta(toKey(entry.getUrl()), entry.getUrl(), entry.getETag(), entry.getLastModified(), System.currentTimeMillis());
+        } catch (IOException e) {
+            LOGGER.debug("Error updating cache entry for {} : {}", entry.getUrl(), e.getMessage());
+        }
+    }
+
+    public void remove(final Entry entry) {
+        final String key = toKey(entry.getUrl());
+        try {
+            Files.deleteIfExists(cacheDir.resolve(key + META_SUFFIX));
+            Files.deleteIfExists(cacheDir.resolve(key + BODY_SUFFIX));
+        } catch (IOException e) {
+            LOGGER.debug("Error removing cache entry for {} : {}", entry.getUrl(), e.getMessage());
+        }
+    }
+
+    private void writeMeta(final String key, final String url, final String eTag, final String lastModified, final long fetchedAt) throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty(META_URL, url);
+        meta.setProperty(META_ETAG, null == eTag ? "" : eTag);
+        meta.setProperty(META_LAST_MODIFIED, null == lastModified ? "" : lastModified);
+        meta.setProperty(META_FETCHED_AT, Long.toString(fetchedAt));
+        Path tmpFile = Files.createTempFile(cacheDir, key, ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tmpFile)) {
+            meta.store(outputStream, null);
+        }
+        Files.move(tmpFile, cacheDir.resolve(key + META_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeAtomically(final Path file, final byte[] data) throws IOException {
+        Path tmpFile = Files.createTempFile(cacheDir, file.getFileName().toString(), ".tmp");
+        Files.write(tmpFile, data);
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String toKey(final String url) {
+        try {
+            byte[]        hash    = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash) { builder.append(String.format("%02x", b)); }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+
+    // ******************** Inner classes *************************************
+    public static class Entry {
+        private final String url;
+        private final Path   bodyFile;
+        private final String eTag;
+        private final String lastModified;
+        private final long   fetchedAt;
+
+        public Entry(final String url, final Path bodyFile, final String eTag, final String lastModified, final long fetchedAt) {
+            this.url          = url;
+            this.bodyFile     = bodyFile;
+            this.eTag         = eTag;
+            this.lastModified = lastModified;
+            this.fetchedAt    = fetchedAt;
+        }
+
+        public String getUrl() { return url; }
+
+        // The body is only read when it is needed, bundle responses are streamed from the file
+        public InputStream openBody() throws IOException { return Files.newInputStream(bodyFile); }
+
+        public String getETag() { return eTag; }
+
+        public String getLastModified() { return lastModified; }
+
+        public long getFetchedAt() { return fetchedAt; }
+
+        public boolean isExpired(final long ttlMillis) { return System.currentTimeMillis() - fetchedAt > ttlMillis; }
+    }
+}
@@ -0,0 +1,590 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+// Downloads a file in several byte ranges at once when the server accepts range requests, otherwise in one stream.
+// Every range is written to its own offset of the target file, so no parts have to be joined afterwards.
+public class BundleDownloader {
+    private static final Logger                   LOGGER            = LoggerFactory.getLogger(BundleDownloader.class);
+    public  static final int                      HTTP_OK           = 200;
+    public  static final int                      HTTP_PARTIAL      = 206;
+    private static final long                     MIN_SEGMENT_SIZE  = 4 * 1024 * 1024;
+    private static final int                      BUFFER_SIZE       = 64 * 1024;
+    private static final String[]                 CHECKSUM_SUFFIXES = { ".sha256.txt", ".sha256" };
+    private static final Pattern                  SHA_256           = Pattern.compile("[0-9a-fA-F]{64}");
+    private static final long                     CHECKSUM_MAX_AGE  = TimeUnit.HOURS.toMillis(1);
+    private static final String                   NO_CHECKSUM       = "";
+    private final        HttpClient               httpClient;
+    private final        Executor                 executor;
+    private final        int                      segments;
+    private final        LruCache<String, String> checksums;
+
+
+    public BundleDownloader(final Executor executor) {
+        this(HttpClientFactory.getSharedClient(), executor, PluginPropertyManager.INSTANCE.getInt(PluginPropertyManager.PROPERTY_KEY_DOWNLOAD_SEGMENTS));
+    }
+    public BundleDownloader(final HttpClient httpClient, final Executor executor, final int segments) {
+        this.httpClient = httpClient;
+        this.executor   = executor;
+        this.segments   = Math.max(1, segments);
+        this.checksums  = new LruCache<>("checksumCache", PluginPropertyManager.INSTANCE.getInt(PluginPropertyManager.PROPERTY_KEY_MEMORY_CACHE_SIZE), CHECKSUM_MAX_AGE);
+    }
+
+
+    public int getSegments() { return segments; }
+
+    // Blocks until the file is complete and returns its size, the listener is called with 0 bytes read once the size is known
+    public long download(final String url, final Path target, final ProgressListener listener) throws IOException, InterruptedException {
+        return download(url, target, -1, null, listener);
+    }
+    // With a version number the progress is kept in a DownloadJournal next to the target, a later call for the same
+    // bundle continues where this one stopped as long as the server still has the same file
+    public long download(final String url, final Path target, final long bundleId, final VersionNumber versionNumber, final ProgressListener listener) throws IOException, InterruptedException {
+        return download(url, target, bundleId, versionNumber, null, listener);
+    }
+    // The SHA-256 is computed while the file is written and handed to the listener, a given checksum is compared with it
+    // and on a mismatch the file is deleted. The checksum is only waited for at the end, it may be fetched meanwhile.
+    public long download(final String url, final Path target, final long bundleId, final VersionNumber versionNumber, final CompletableFuture<String> checksum, final ProgressListener listener) throws IOException, InterruptedException {
+        final Probe     probe     = probe(url);
+        final boolean   resumable = null != versionNumber && probe.acceptsRanges;
+        DownloadJournal journal   = resumable ? DownloadJournal.load(target, bundleId, versionNumber) : null;
+        if (null != journal && !journal.matches(probe.fileSize, probe.eTag, probe.lastModified)) { journal = null; }
+        final boolean   resume    = null != journal;
+        if (!resume && probe.acceptsRanges) {
+            final int ranges = (int) Math.max(1, Math.min(segments, probe.fileSize / MIN_SEGMENT_SIZE));
+            journal = new DownloadJournal(target, bundleId, versionNumber, probe.fileSize, probe.eTag, probe.lastModified, ranges);
+        }
+        if (!resumable && null != versionNumber) { Files.deleteIfExists(DownloadJournal.getJournalFile(target)); }
+        // The target may be a hard link to a blob of the ArchiveStore, truncating it would rewrite the stored archive
+        if (!resume) { Files.deleteIfExists(target); }
+        listener.onProgress(probe.fileSize, 0);
+
+        final long   fileSize;
+        final String digestValue;
+        try (FileChannel channel = resume ? FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                                          : FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final DownloadJournal rangeJournal = journal;
+            final OrderedDigest   digest       = new OrderedDigest(channel, null == rangeJournal ? () -> 0 : rangeJournal::getContiguousBytes);
+            try {
+                if (null == journal) {
+                    LOGGER.debug("Downloading {} in one stream", probe.uri);
+                    fileSize = downloadStream(probe, channel, digest, listener);
+                } else {
+                    if (resume) {
+                        LOGGER.debug("Resuming {} at {} of {} bytes", probe.uri, journal.getBytesDone(), probe.fileSize);
+                    } else {
+                        LOGGER.debug("Downloading {} ({} bytes) in {} ranges", probe.uri, probe.fileSize, journal.getRangeCount());
+                    }
+                    downloadRanges(probe, channel, journal, resumable, digest, listener);
+                    fileSize = probe.fileSize;
+                }
+                digestValue = digest.finish(fileSize);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                // All ranges have stopped by now, like a checkpoint the data goes to disk before the journal is saved
+                if (resumable) {
+                    try {
+                        synchronized (journal) {
+                            channel.force(false);
+                            journal.save();
+                        }
+                    } catch (IOException saveException) {
+                        e.addSuppressed(saveException);
+                    }
+                }
+                throw e;
+            }
+        }
+        if (resumable) { journal.delete(); }
+
+        // Resuming a corrupt file would only keep the corruption, so nothing of it is kept
+        final String expected = await(checksum);
+        if (null != expected && !digestValue.equalsIgnoreCase(expected.trim())) {
+            Files.deleteIfExists(target);
+            throw new IOException("Checksum mismatch for " + target.getFileName() + ", expected " + expected + " but got " + digestValue);
+        }
+        listener.onDigest(digestValue);
+        return fileSize;
+    }
+
+    // Unpacks the bundle into installDir while it arrives instead of reading the archive a second time afterwards.
+    // The archive is only written to disk if archiveFile is not null, returns the JDK home.
+    public Path install(final String url, final String fileName, final Path installDir, final Path archiveFile, final CompletableFuture<String> checksum, final ProgressListener listener) throws IOException, InterruptedException {
+        if (!ArchiveExtractor.isSupported(fileName)) { throw new IOException("Can't unpack " + fileName); }
+        final HttpResponse<InputStream> response = httpClient.send(HttpClientFactory.newRequest(url).GET().build(), BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != HTTP_OK) { throw new IOException("Response (" + response.statusCode() + ") " + url); }
+            return unpack(body, response.headers().firstValueAsLong("Content-Length").orElse(-1), fileName, installDir, archiveFile, checksum, listener);
+        }
+    }
+
+    // Everything is unpacked into a staging directory first, so a failed or corrupt download leaves no half JDK behind
+    public Path unpack(final InputStream input, final long fileSize, final String fileName, final Path installDir, final Path archiveFile, final CompletableFuture<String> checksum,
+                       final ProgressListener listener) throws IOException, InterruptedException {
+        Files.createDirectories(installDir);
+        final Path staging = Files.createTempDirectory(installDir, ".install-");
+        try {
+            listener.onProgress(fileSize, 0);
+            final MessageDigest digest = null == checksum && null == archiveFile ? null : OrderedDigest.newDigest();
+            // Like in download() an old archive at that place may share its content with the store
+            if (null != archiveFile) { Files.deleteIfExists(archiveFile); }
+            try (OutputStream archive = null == archiveFile ? null : Files.newOutputStream(archiveFile);
+                 InputStream  tee     = new TeeInputStream(input, archive, digest, fileSize, listener)) {
+                ArchiveExtractor.extract(tee, fileName, staging);
+                // Trailing padding still belongs to the archive and its checksum
+                tee.transferTo(OutputStream.nullOutputStream());
+            }
+            if (null != digest) {
+                final String digestValue = OrderedDigest.toHex(digest.digest());
+                final String expected    = await(checksum);
+                if (null != expected && !digestValue.equalsIgnoreCase(expected.trim())) {
+                    throw new IOException("Checksum mismatch for " + fileName + ", expected " + expected + " but got " + digestValue);
+                }
+                listener.onDigest(digestValue);
+            }
+
+            final List<Path> entries;
+            try (Stream<Path> children = Files.list(staging)) {
+                entries = children.collect(Collectors.toList());
+            }
+            for (Path entry : entries) {
+                final Path target = installDir.resolve(entry.getFileName().toString());
+                if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) { throw new IOException(target + " exists already"); }
+            }
+            // Bundles contain one top level directory, that one is the JDK home
+            final Path home = entries.size() == 1 && Files.isDirectory(entries.get(0), LinkOption.NOFOLLOW_LINKS) ? installDir.resolve(entries.get(0).getFileName().toString()) : installDir;
+            for (Path entry : entries) { Files.move(entry, installDir.resolve(entry.getFileName().toString()), StandardCopyOption.ATOMIC_MOVE); }
+            return home;
+        } catch (InterruptedIOException e) {
+            if (null != archiveFile) { Files.deleteIfExists(archiveFile); }
+            throw new InterruptedException(e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            // Like the extracted files a partial or corrupt archive is of no use
+            if (null != archiveFile) { Files.deleteIfExists(archiveFile); }
+            throw e;
+        } finally {
+            deleteRecursively(staging);
+        }
+    }
+
+    // Many distributions publish the SHA-256 of a bundle next to it, the future completes with null if there is none.
+    // All suffixes are requested at once and the answer is kept, also that there is no checksum, so that a bundle
+    // which is served from the ArchiveStore again doesn't wait for the server.
+    public CompletableFuture<String> fetchChecksum(final String url) {
+        final String cached = checksums.getIfPresent(url);
+        if (null != cached) {
+            checksums.getStats().recordHit();
+            return CompletableFuture.completedFuture(NO_CHECKSUM.equals(cached) ? null : cached);
+        }
+        checksums.getStats().recordMiss();
+        final List<CompletableFuture<String>> requests = new ArrayList<>();
+        for (String suffix : CHECKSUM_SUFFIXES) { requests.add(requestChecksum(url + suffix)); }
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            boolean answered = true;
+            for (CompletableFuture<String> request : requests) {
+                final String checksum = request.join();
+                if (null == checksum) {
+                    answered = false;
+                } else if (!NO_CHECKSUM.equals(checksum)) {
+                    checksums.put(url, checksum);
+                    return checksum;
+                }
+            }
+            // Only a definite answer of every location is kept, a timeout or server error is asked again next time
+            if (answered) { checksums.put(url, NO_CHECKSUM); }
+            return null;
+        });
+    }
+
+    // A checksum that could not be fetched counts as none, like in fetchChecksum
+    public static String await(final CompletableFuture<String> checksum) throws InterruptedException {
+        if (null == checksum) { return null; }
+        try {
+            return checksum.get();
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    // The checksum, NO_CHECKSUM if the server has none or null if it could not be asked
+    private CompletableFuture<String> requestChecksum(final String url) {
+        try {
+            return httpClient.sendAsync(HttpClientFactory.newRequest(url).GET().build(), BodyHandlers.ofString()).handle((response, throwable) -> {
+                if (null != throwable) {
+                    LOGGER.debug("Error fetching checksum {} : {}", url, throwable.getMessage());
+                    return null;
+                }
+                if (response.statusCode() >= 500) { return null; }
+                if (response.statusCode() != HTTP_OK) { return NO_CHECKSUM; }
+                final String checksum = response.body().trim().split("\\s+")[0];
+                return SHA_256.matcher(checksum).matches() ? checksum : NO_CHECKSUM;
+            });
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Error fetching checksum {} : {}", url, e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    // HEAD follows the redirects once, the ranges are then requested from the final location
+    private Probe probe(final String url) throws IOException, InterruptedException {
+        final HttpRequest        request  = HttpClientFactory.newRequest(url).method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+        final HttpResponse<Void> response = httpClient.send(request, BodyHandlers.discarding());
+        if (response.statusCode() != HTTP_OK) { return new Probe(URI.create(url), -1, false, "", ""); }
+        final long    fileSize      = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        final boolean acceptsRanges = fileSize > 0 && response.headers().allValues("Accept-Ranges").stream().anyMatch(value -> value.trim().equalsIgnoreCase("bytes"));
+        return new Probe(response.uri(), fileSize, acceptsRanges, response.headers().firstValue("ETag").orElse(""), response.headers().firstValue("Last-Modified").orElse(""));
+    }
+
+    private long downloadStream(final Probe probe, final FileChannel channel, final OrderedDigest digest, final ProgressListener listener) throws IOException, InterruptedException {
+        final HttpResponse<InputStream> response = httpClient.send(HttpClientFactory.newRequest(probe.uri.toString()).GET().build(), BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != HTTP_OK) { throw new IOException("Response (" + response.statusCode() + ") " + probe.uri); }
+            final long       fileSize  = probe.fileSize > 0 ? probe.fileSize : response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            final AtomicLong bytesRead = new AtomicLong();
+            return copy(body, channel, 0, Long.MAX_VALUE, new AtomicBoolean(), digest, read -> listener.onProgress(fileSize, bytesRead.addAndGet(read)));
+        }
+    }
+
+    private void downloadRanges(final Probe probe, final FileChannel channel, final DownloadJournal journal, final boolean resumable, final OrderedDigest digest, final ProgressListener listener) throws IOException, InterruptedException {
+        final AtomicLong                    bytesRead = new AtomicLong(journal.getBytesDone());
+        final AtomicBoolean                 aborted   = new AtomicBoolean();
+        final AtomicReference<Throwable>    failure   = new AtomicReference<>();
+        final List<CompletableFuture<Void>> ranges    = new ArrayList<>(journal.getRangeCount());
+        final List<AtomicBoolean>           started   = new ArrayList<>(journal.getRangeCount());
+        final Set<InputStream>              bodies    = ConcurrentHashMap.newKeySet();
+        for (int i = 0 ; i < journal.getRangeCount() ; i++) {
+            if (journal.isComplete(i)) { continue; }
+            final int           range        = i;
+            final AtomicBoolean rangeStarted = new AtomicBoolean();
+            started.add(rangeStarted);
+            ranges.add(CompletableFuture.runAsync(() -> {
+                // A range that didn't start before the download stopped must not start afterwards
+                if (!rangeStarted.compareAndSet(false, true)) { return; }
+                try {
+                    downloadRange(probe.uri, channel, journal, range, aborted, bodies, digest, read -> {
+                        journal.advance(range, read);
+                        listener.onProgress(probe.fileSize, bytesRead.addAndGet(read));
+                        if (resumable && journal.isSaveDue()) { checkpoint(channel, journal); }
+                    });
+                } catch (IOException | InterruptedException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor).whenComplete((v, throwable) -> {
+                // The first failure stops the other ranges, their cancellation is not the cause
+                if (null == throwable) { return; }
+                failure.compareAndSet(null, throwable instanceof CompletionException ? throwable.getCause() : throwable);
+                abort(aborted, bodies);
+            }));
+        }
+
+        try {
+            CompletableFuture.allOf(ranges.toArray(new CompletableFuture<?>[0])).get();
+        } catch (InterruptedException e) {
+            aborted.set(true);
+            throw e;
+        } catch (ExecutionException e) {
+            final Throwable cause = failure.get();
+            if (cause instanceof IOException)          { throw (IOException) cause; }
+            if (cause instanceof InterruptedException) { throw (InterruptedException) cause; }
+            throw new IOException(cause);
+        } finally {
+            abort(aborted, bodies);
+            awaitRanges(ranges, started);
+        }
+    }
+
+    // A range only looks at the flag between two reads, closing its body also ends a read that waits for a stalled server
+    private static void abort(final AtomicBoolean aborted, final Set<InputStream> bodies) {
+        aborted.set(true);
+        for (InputStream body : bodies) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                LOGGER.debug("Error closing range : {}", e.getMessage());
+            }
+        }
+    }
+
+    // The caller saves the journal next, so no range may still be writing or advancing it
+    private static void awaitRanges(final List<CompletableFuture<Void>> ranges, final List<AtomicBoolean> started) {
+        boolean interrupted = false;
+        for (int i = 0 ; i < ranges.size() ; i++) {
+            if (started.get(i).compareAndSet(false, true)) { continue; }
+            while (true) {
+                try {
+                    ranges.get(i).get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) { Thread.currentThread().interrupt(); }
+    }
+
+    private void downloadRange(final URI uri, final FileChannel channel, final DownloadJournal journal, final int range, final AtomicBoolean aborted,
+                               final Set<InputStream> bodies, final OrderedDigest digest, final ReadListener listener) throws IOException, InterruptedException {
+        final long                      start    = journal.getPosition(range);
+        final long                      end      = journal.getEnd(range);
+        // HTTP/2 would multiplex all ranges over one connection, the ranges should use connections of their own
+        final HttpRequest               request  = HttpClientFactory.newRequest(uri.toString()).version(Version.HTTP_1_1).header("Range", "bytes=" + start + "-" + end).GET().build();
+        final HttpResponse<InputStream> response = httpClient.send(request, BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            bodies.add(body);
+            if (aborted.get()) { throw new CancellationException(); }
+            // A server that ignores the range would send the whole file for every range
+            if (response.statusCode() != HTTP_PARTIAL || !response.headers().firstValue("Content-Range").orElse("").startsWith("bytes " + start + "-")) {
+                throw new IOException("Range " + start + "-" + end + " not served by " + uri + " (" + response.statusCode() + ")");
+            }
+            final long length = end - start + 1;
+            if (copy(body, channel, start, length, aborted, digest, listener) != length) {
+                throw new IOException("Range " + start + "-" + end + " of " + uri + " ended early");
+            }
+        } finally {
+            bodies.remove(response.body());
+        }
+    }
+
+    // The journal must never claim more than the disk has, so the data is forced out before it is saved
+    private static void checkpoint(final FileChannel channel, final DownloadJournal journal) throws IOException {
+        synchronized (journal) {
+            if (!journal.isSaveDue()) { return; }
+            channel.force(false);
+            journal.save();
+        }
+    }
+
+    // Positional writes don't touch the channel position, so all ranges can write to the same channel concurrently
+    private static long copy(final InputStream input, final FileChannel channel, final long offset, final long length, final AtomicBoolean aborted,
+                             final OrderedDigest digest, final ReadListener listener) throws IOException {
+        final byte[]     buffer  = new byte[BUFFER_SIZE];
+        final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        long             written = 0;
+        int              read;
+        while (written < length && (read = input.read(buffer, 0, (int) Math.min(buffer.length, length - written))) != -1) {
+            if (aborted.get())                          { throw new CancellationException(); }
+            if (Thread.currentThread().isInterrupted()) { throw new InterruptedIOException(); }
+            wrapper.clear().limit(read);
+            while (wrapper.hasRemaining()) { channel.write(wrapper, offset + written + wrapper.position()); }
+            listener.onRead(read);
+            if (null != digest) { digest.update(buffer, read, offset + written); }
+            written += read;
+        }
+        return written;
+    }
+
+
+    private static void deleteRecursively(final Path dir) {
+        if (!Files.exists(dir)) { return; }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    LOGGER.debug("Error deleting {} : {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.debug("Error deleting {} : {}", dir, e.getMessage());
+        }
+    }
+
+
+    // ******************** Inner classes *************************************
+    public interface ProgressListener {
+        void onProgress(long fileSize, long bytesRead);
+
+        // The SHA-256 of the complete archive, computed while it was written
+        default void onDigest(final String sha256) {}
+    }
+
+    private interface ReadListener {
+        void onRead(int bytes) throws IOException;
+    }
+
+    // Hashes the file from its first byte while the ranges arrive in any order. Bytes that continue the hashed part are
+    // taken from the write buffer, bytes another range wrote ahead are read back from the file once the hashed part reaches them.
+    private static class OrderedDigest {
+        private final MessageDigest digest;
+        private final FileChannel   channel;
+        private final LongSupplier  contiguousBytes;
+        private final ReentrantLock lock;
+        private final ByteBuffer    readBuffer;
+        private       long          hashed;
+
+        OrderedDigest(final FileChannel channel, final LongSupplier contiguousBytes) {
+            this.digest          = newDigest();
+            this.channel         = channel;
+            this.contiguousBytes = contiguousBytes;
+            this.lock            = new ReentrantLock();
+            this.readBuffer      = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        // A range that can't get the lock just continues, the bytes it wrote are picked up by the one hashing
+        void update(final byte[] buffer, final int length, final long position) throws IOException {
+            if (!lock.tryLock()) { return; }
+            try {
+                if (position == hashed) {
+                    digest.update(buffer, 0, length);
+                    hashed += length;
+                }
+                catchUp(contiguousBytes.getAsLong());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        String finish(final long fileSize) throws IOException {
+            lock.lock();
+            try {
+                catchUp(fileSize);
+                return toHex(digest.digest());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void catchUp(final long end) throws IOException {
+            while (hashed < end) {
+                readBuffer.clear().limit((int) Math.min(readBuffer.capacity(), end - hashed));
+                final int read = channel.read(readBuffer, hashed);
+                if (read <= 0) { throw new IOException("File ended at " + hashed + " while hashing up to " + end); }
+                readBuffer.flip();
+                digest.update(readBuffer);
+                hashed += read;
+            }
+        }
+
+        static MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static String toHex(final byte[] hash) {
+            final StringBuilder builder = new StringBuilder();
+            for (byte b : hash) { builder.append(String.format("%02x", b)); }
+            return builder.toString();
+        }
+    }
+
+    // Hands every byte the extractor reads to the archive file and the digest on the way and reports the progress
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream     archive;
+        private final MessageDigest    digest;
+        private final long             fileSize;
+        private final ProgressListener listener;
+        private       long             bytesRead;
+
+        TeeInputStream(final InputStream input, final OutputStream archive, final MessageDigest digest, final long fileSize, final ProgressListener listener) {
+            super(input);
+            this.archive  = archive;
+            this.digest   = digest;
+            this.fileSize = fileSize;
+            this.listener = listener;
+        }
+
+        @Override public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (Thread.currentThread().isInterrupted()) { throw new InterruptedIOException(); }
+            final int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                if (null != archive) { archive.write(buffer, offset, read); }
+                if (null != digest)  { digest.update(buffer, offset, read); }
+                bytesRead += read;
+                listener.onProgress(fileSize, bytesRead);
+            }
+            return read;
+        }
+
+        // Skipped bytes have to pass the archive and the digest as well
+        @Override public long skip(final long bytes) throws IOException {
+            final byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(0, bytes))];
+            return Math.max(0, read(buffer, 0, buffer.length));
+        }
+
+        @Override public boolean markSupported() { return false; }
+    }
+
+    private static class Probe {
+        private final URI     uri;
+        private final long    fileSize;
+        private final boolean acceptsRanges;
+        private final String  eTag;
+        private final String  lastModified;
+
+        Probe(final URI uri, final long fileSize, final boolean acceptsRanges, final String eTag, final String lastModified) {
+            this.uri           = uri;
+            this.fileSize      = fileSize;
+            this.acceptsRanges = acceptsRanges;
+            this.eTag          = eTag;
+            this.lastModified  = lastModified;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.ApiFeature;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+
+import java.util.OptionalInt;
+
+
+// Matching rules of the disco api that the local filters share
+public class BundleFilter {
+
+    private BundleFilter() {}
+
+
+    public static boolean isAny(final ApiFeature feature) {
+        return null == feature || feature == feature.getDefault() || feature == feature.getNotFound();
+    }
+
+    // Trailing zeros in the requested version act as wildcards, e.g. 11 matches 11.0.9
+    public static boolean matchesVersion(final VersionNumber requested, final VersionNumber actual) {
+        if (null == requested) { return true; }
+        if (null == actual)    { return false; }
+        int[] requestedNumbers = toArray(requested);
+        int[] actualNumbers    = toArray(actual);
+        int   lastSignificant  = 0;
+        for (int i = 0 ; i < requestedNumbers.length ; i++) {
+            if (requestedNumbers[i] != 0) { lastSignificant = i; }
+        }
+        for (int i = 0 ; i <= lastSignificant ; i++) {
+            if (requestedNumbers[i] != actualNumbers[i]) { return false; }
+        }
+        return true;
+    }
+
+    public static int[] toArray(final VersionNumber versionNumber) {
+        return new int[] { valueOf(versionNumber.getFeature()), valueOf(versionNumber.getInterim()), valueOf(versionNumber.getUpdate()), valueOf(versionNumber.getPatch()) };
+    }
+
+    private static int valueOf(final OptionalInt optionalInt) { return optionalInt.isPresent() ? optionalInt.getAsInt() : 0; }
+}
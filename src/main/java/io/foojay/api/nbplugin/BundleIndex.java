@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.ApiFeature;
+import io.foojay.api.discoclient.bundle.Architecture;
+import io.foojay.api.discoclient.bundle.Bitness;
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.BundleType;
+import io.foojay.api.discoclient.bundle.Distribution;
+import io.foojay.api.discoclient.bundle.Extension;
+import io.foojay.api.discoclient.bundle.Latest;
+import io.foojay.api.discoclient.bundle.OperatingSystem;
+import io.foojay.api.discoclient.bundle.ReleaseStatus;
+import io.foojay.api.discoclient.bundle.SupportTerm;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+
+// Immutable index over a bundle store with one bitset per enum value. The bits refer to the store positions
+// sorted by version number, so all bundles of a feature version form one contiguous range of bits.
+public class BundleIndex {
+    private static final BitSet                       EMPTY = new BitSet();
+    private final        BundleStore                  store;
+    private final        int[]                        order;
+    private final        int[]                        features;
+    private final        Map<Distribution, BitSet>    distributions;
+    private final        Map<OperatingSystem, BitSet> operatingSystems;
+    private final        Map<Architecture, BitSet>    architectures;
+    private final        Map<Bitness, BitSet>         bitnesses;
+    private final        Map<Extension, BitSet>       extensions;
+    private final        Map<BundleType, BitSet>      bundleTypes;
+    private final        Map<ReleaseStatus, BitSet>   releaseStatus;
+    private final        Map<SupportTerm, BitSet>     supportTerms;
+    private final        BitSet                       fx;
+
+
+    public BundleIndex(final List<Bundle> bundles) {
+        this(BundleList.of(bundles));
+    }
+    public BundleIndex(final BundleList bundles) {
+        this(bundles.getStore(), bundles.getPositions());
+    }
+    public BundleIndex(final BundleStore store) {
+        this(store, IntStream.range(0, store.size()).toArray());
+    }
+    public BundleIndex(final BundleStore store, final int[] positions) {
+        this.store = store;
+        this.order = Arrays.stream(positions)
+                           .boxed()
+                           .sorted(Comparator.comparingLong(store::getPackedVersion).thenComparing(store::getVersionNumber))
+                           .mapToInt(Integer::intValue)
+                           .toArray();
+
+        features         = new int[order.length];
+        distributions    = new EnumMap<>(Distribution.class);
+        operatingSystems = new EnumMap<>(OperatingSystem.class);
+        architectures    = new EnumMap<>(Architecture.class);
+        bitnesses        = new EnumMap<>(Bitness.class);
+        extensions       = new EnumMap<>(Extension.class);
+        bundleTypes      = new EnumMap<>(BundleType.class);
+        releaseStatus    = new EnumMap<>(ReleaseStatus.class);
+        supportTerms     = new EnumMap<>(SupportTerm.class);
+        fx               = new BitSet(order.length);
+
+        for (int i = 0 ; i < order.length ; i++) {
+            final int position = order[i];
+            features[i] = store.getFeatureVersion(position);
+            index(distributions, store.getDistribution(position), i);
+            index(operatingSystems, store.getOperatingSystem(position), i);
+            index(architectures, store.getArchitecture(position), i);
+            index(bitnesses, store.getBitness(position), i);
+            index(extensions, store.getExtension(position), i);
+            index(bundleTypes, store.getBundleType(position), i);
+            index(releaseStatus, store.getReleaseStatus(position), i);
+            index(supportTerms, store.getSupportTerm(position), i);
+            if (store.isFx(position)) { fx.set(i); }
+        }
+    }
+
+
+    public BundleStore getStore() { return store; }
+
+    public int size() { return order.length; }
+
+    public BundleList getBundles() { return new BundleList(store, order); }
+
+    public BundleList getBundles(final BundleQuery query) {
+        final BitSet selection = select(query);
+        final int[]  positions = new int[selection.cardinality()];
+        int          index     = 0;
+        for (int i = selection.nextSetBit(0) ; i >= 0 ; i = selection.nextSetBit(i + 1)) {
+            positions[index++] = order[i];
+        }
+        return new BundleList(store, positions);
+    }
+
+    // Returns the bits of all bundles that match the given query, the only allocation is the resulting bitset
+    public BitSet select(final BundleQuery query) {
+        final BitSet        selection     = new BitSet(order.length);
+        final VersionNumber versionNumber = query.getVersionNumber();
+        if (null == versionNumber) {
+            selection.set(0, order.length);
+        } else {
+            final int feature = versionNumber.getFeature().orElse(0);
+            selection.set(lowerBound(feature), lowerBound(feature + 1));
+        }
+
+        and(selection, distributions, query.getDistribution());
+        and(selection, operatingSystems, query.getOperatingSystem());
+        and(selection, architectures, query.getArchitecture());
+        and(selection, bitnesses, query.getBitness());
+        and(selection, extensions, query.getExtension());
+        and(selection, bundleTypes, query.getBundleType());
+        and(selection, releaseStatus, query.getReleaseStatus());
+        and(selection, supportTerms, query.getSupportTerm());
+        if (null != query.getFx() && query.getFx()) { selection.and(fx); }
+
+        // Only versions more specific than the feature version have to be checked row by row
+        if (null != versionNumber && isMoreSpecificThanFeature(versionNumber)) {
+            for (int i = selection.nextSetBit(0) ; i >= 0 ; i = selection.nextSetBit(i + 1)) {
+                if (!BundleFilter.matchesVersion(versionNumber, store.getVersionNumber(order[i]))) { selection.clear(i); }
+            }
+        }
+
+        selectLatest(selection, query.getLatest());
+        return selection;
+    }
+
+    // Bits are sorted by version, so the latest bundles are found walking backwards from the last set bit
+    private void selectLatest(final BitSet selection, final Latest latest) {
+        if (null == latest || selection.isEmpty()) { return; }
+        switch(latest) {
+            case OVERALL:
+                final VersionNumber maxVersion = store.getVersionNumber(order[selection.length() - 1]);
+                for (int i = selection.previousSetBit(selection.length() - 1) ; i >= 0 ; i = selection.previousSetBit(i - 1)) {
+                    if (store.getVersionNumber(order[i]).compareTo(maxVersion) != 0) { selection.clear(0, i + 1); break; }
+                }
+                break;
+            case PER_DISTRIBUTION:
+                final Map<Distribution, VersionNumber> maxVersions = new EnumMap<>(Distribution.class);
+                for (int i = selection.previousSetBit(selection.length() - 1) ; i >= 0 ; i = selection.previousSetBit(i - 1)) {
+                    final Distribution  distribution    = store.getDistribution(order[i]);
+                    final VersionNumber versionNumber   = store.getVersionNumber(order[i]);
+                    final VersionNumber distributionMax = null == distribution ? null : maxVersions.putIfAbsent(distribution, versionNumber);
+                    if (null != distributionMax && versionNumber.compareTo(distributionMax) != 0) { selection.clear(i); }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private int lowerBound(final int feature) {
+        int low  = 0;
+        int high = features.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (features[mid] < feature) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isMoreSpecificThanFeature(final VersionNumber versionNumber) {
+        return versionNumber.getInterim().orElse(0) != 0 || versionNumber.getUpdate().orElse(0) != 0 || versionNumber.getPatch().orElse(0) != 0;
+    }
+
+    private static <T extends Enum<T>> void index(final Map<T, BitSet> index, final T value, final int position) {
+        if (null == value) { return; }
+        index.computeIfAbsent(value, v -> new BitSet()).set(position);
+    }
+
+    private static <T extends Enum<T> & ApiFeature> void and(final BitSet selection, final Map<T, BitSet> index, final T value) {
+        if (BundleFilter.isAny(value)) { return; }
+        selection.and(index.getOrDefault(value, EMPTY));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.foojay.api.discoclient.bundle.Architecture;
+import io.foojay.api.discoclient.bundle.Bitness;
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.BundleType;
+import io.foojay.api.discoclient.bundle.Distribution;
+import io.foojay.api.discoclient.bundle.Extension;
+import io.foojay.api.discoclient.bundle.OperatingSystem;
+import io.foojay.api.discoclient.bundle.ReleaseStatus;
+import io.foojay.api.discoclient.bundle.SupportTerm;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+
+
+// Reads bundles token by token from a disco api response straight into a BundleStore, without building a json
+// tree or Bundle objects. The fields are interpreted the same way as in the Bundle(String) constructor.
+public class BundleJsonParser {
+    private final BundleStore                store;
+    private final Map<String, VersionNumber> versionNumbers;
+
+
+    public BundleJsonParser(final BundleStore store) {
+        this.store          = store;
+        this.versionNumbers = new HashMap<>();
+    }
+
+
+    public static BundleList parse(final InputStream inputStream, final ObjIntConsumer<BundleStore> consumer) throws IOException {
+        final BundleStore store = new BundleStore();
+        new BundleJsonParser(store).parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8), null == consumer ? null : position -> consumer.accept(store, position));
+        return BundleList.of(store);
+    }
+
+    // Every bundle is added to the store and handed to the consumer (if any) by its position as soon as it is read
+    public int parse(final Reader reader, final IntConsumer consumer) throws IOException {
+        final JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+        if (jsonReader.peek() == JsonToken.END_DOCUMENT) { return 0; }
+        if (jsonReader.peek() != JsonToken.BEGIN_ARRAY) {
+            jsonReader.skipValue();
+            return 0;
+        }
+
+        int count = 0;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            if (Thread.currentThread().isInterrupted()) { throw new InterruptedIOException("Parsing bundles interrupted"); }
+            if (jsonReader.peek() != JsonToken.BEGIN_OBJECT) {
+                jsonReader.skipValue();
+                continue;
+            }
+            final int position = parseBundle(jsonReader);
+            count++;
+            if (null != consumer) { consumer.accept(position); }
+        }
+        jsonReader.endArray();
+        return count;
+    }
+
+    private int parseBundle(final JsonReader jsonReader) throws IOException {
+        long            id                  = -1;
+        Distribution    distribution        = Distribution.NOT_FOUND;
+        VersionNumber   versionNumber       = null;
+        VersionNumber   javaVersion         = null;
+        VersionNumber   distributionVersion = null;
+        Architecture    architecture        = Architecture.NOT_FOUND;
+        Bitness         bitness             = Bitness.NOT_FOUND;
+        OperatingSystem operatingSystem     = OperatingSystem.NOT_FOUND;
+        BundleType      bundleType          = BundleType.NOT_FOUND;
+        ReleaseStatus   releaseStatus       = ReleaseStatus.NOT_FOUND;
+        Extension       extension           = Extension.NOT_FOUND;
+        SupportTerm     supportTerm         = SupportTerm.NOT_FOUND;
+        boolean         fx                  = false;
+        String          fileName            = "";
+        String          downloadLink        = "";
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            final String name = jsonReader.nextName();
+            if (jsonReader.peek() == JsonToken.NULL) {
+                jsonReader.skipValue();
+                continue;
+            }
+            switch(name) {
+                case Bundle.FIELD_ID                  : id                  = jsonReader.nextLong(); break;
+                case Bundle.FIELD_DISTRIBUTION        : distribution        = toDistribution(jsonReader.nextString()); break;
+                case Bundle.FIELD_VERSION             : versionNumber       = toVersionNumber(jsonReader.nextString()); break;
+                case Bundle.FIELD_JAVA_VERSION        : javaVersion         = toVersionNumber(jsonReader.nextString()); break;
+                case Bundle.FIELD_DISTRIBUTION_VERSION: distributionVersion = toVersionNumber(jsonReader.nextString()); break;
+                case Bundle.FIELD_ARCHITECTURE        : architecture        = Architecture.fromText(jsonReader.nextString()); break;
+                case Bundle.FIELD_BITNESS             : bitness             = Bitness.fromInt(jsonReader.nextInt()); break;
+                case Bundle.FIELD_OPERATING_SYSTEM    : operatingSystem     = OperatingSystem.fromText(jsonReader.nextString()); break;
+                case Bundle.FIELD_BUNDLE_TYPE         : bundleType          = BundleType.fromText(jsonReader.nextString()); break;
+                case Bundle.FIELD_RELEASE_STATUS      : releaseStatus       = ReleaseStatus.fromText(jsonReader.nextString()); break;
+                case Bundle.FIELD_EXTENSION           : extension           = Extension.fromText(jsonReader.nextString()); break;
+                case Bundle.FIELD_SUPPORT_TERM        : supportTerm         = SupportTerm.fromText(jsonReader.nextString()); break;
+                case Bundle.FIELD_JAVAFX              : fx                  = jsonReader.nextBoolean(); break;
+                case Bundle.FIELD_FILENAME            : fileName            = jsonReader.nextString(); break;
+                case Bundle.FIELD_DOWNLOAD_LINK       : downloadLink        = jsonReader.nextString(); break;
+                default                               : jsonReader.skipValue(); break;
+            }
+        }
+        jsonReader.endObject();
+
+        return store.add(id, distribution, null == versionNumber ? new VersionNumber() : versionNumber, null == javaVersion ? new VersionNumber() : javaVersion,
+                         null == distributionVersion ? new VersionNumber() : distributionVersion, operatingSystem, architecture, bitness, bundleType,
+                         releaseStatus, extension, supportTerm, fx, fileName, downloadLink);
+    }
+
+    // The same version text shows up in many bundles, parsing it once saves the regex work
+    private VersionNumber toVersionNumber(final String text) {
+        return versionNumbers.computeIfAbsent(text, t -> {
+            try {
+                return VersionNumber.fromText(t);
+            } catch (IllegalArgumentException e) {
+                return new VersionNumber();
+            }
+        });
+    }
+
+    private static Distribution toDistribution(final String text) {
+        try {
+            return Distribution.valueOf(text);
+        } catch (IllegalArgumentException e) {
+            return Distribution.NOT_FOUND;
+        }
+    }
+}
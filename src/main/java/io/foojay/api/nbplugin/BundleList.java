@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.nbplugin.BundleStore.RowView;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+
+// Read only list of rows of a BundleStore, bulk access should go through the row view. get() creates a Bundle on
+// the first access of an index and keeps it as long as the list lives, the store itself doesn't keep any Bundle.
+public class BundleList extends AbstractList<Bundle> implements RandomAccess {
+    private final BundleStore store;
+    private final int[]       positions;
+    private       Bundle[]    bundles;
+
+
+    public BundleList(final BundleStore store, final int[] positions) {
+        this.store     = store;
+        this.positions = positions;
+    }
+
+
+    public static BundleList of(final List<Bundle> bundles) {
+        if (bundles instanceof BundleList) { return (BundleList) bundles; }
+        return of(BundleStore.of(bundles));
+    }
+    public static BundleList of(final BundleStore store) {
+        final int[] positions = new int[store.size()];
+        Arrays.setAll(positions, i -> i);
+        return new BundleList(store, positions);
+    }
+
+    public BundleStore getStore() { return store; }
+
+    public int getPosition(final int index) { return positions[index]; }
+
+    public int[] getPositions() { return positions.clone(); }
+
+    public RowView rowView(final int index) { return store.rowView().moveTo(positions[index]); }
+
+    @Override public Bundle get(final int index) {
+        synchronized (this) {
+            if (null != bundles && null != bundles[index]) { return bundles[index]; }
+        }
+        final Bundle bundle = store.toBundle(positions[index]);
+        synchronized (this) {
+            if (null == bundles) { bundles = new Bundle[positions.length]; }
+            if (null == bundles[index]) { bundles[index] = bundle; }
+            return bundles[index];
+        }
+    }
+
+    @Override public int size() { return positions.length; }
+
+    // Sorts the positions only, the comparator gets two row views that are moved for every comparison
+    public BundleList sorted(final Comparator<RowView> comparator) {
+        final RowView   left    = store.rowView();
+        final RowView   right   = store.rowView();
+        final Integer[] ordered = new Integer[positions.length];
+        for (int i = 0 ; i < positions.length ; i++) { ordered[i] = positions[i]; }
+        Arrays.sort(ordered, (p1, p2) -> comparator.compare(left.moveTo(p1), right.moveTo(p2)));
+        final int[] sortedPositions = new int[ordered.length];
+        for (int i = 0 ; i < ordered.length ; i++) { sortedPositions[i] = ordered[i]; }
+        return new BundleList(store, sortedPositions);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.Release;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.util.BundleFileInfo;
+
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+
+public interface BundleProvider {
+
+    List<Bundle> getBundles(BundleQuery query);
+
+    // Hands every bundle to the consumer by its store position as soon as it is available, providers that
+    // can't stream report all bundles once the result is complete. No bundle is streamed twice, but a stream that
+    // broke off may have been incomplete, the returned list is the result.
+    default List<Bundle> getBundles(final BundleQuery query, final ObjIntConsumer<BundleStore> consumer) {
+        final BundleList bundles = BundleList.of(getBundles(query));
+        for (int i = 0 ; i < bundles.size() ; i++) { consumer.accept(bundles.getStore(), bundles.getPosition(i)); }
+        return bundles;
+    }
+
+    BundleFileInfo getBundleFileInfo(long bundleId, VersionNumber versionNumber);
+
+    BundleFileInfo getBundleFileInfoSCDL(long bundleId, VersionNumber versionNumber);
+
+    Release getRelease(String release);
+}
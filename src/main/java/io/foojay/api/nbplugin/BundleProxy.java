@@ -0,0 +1,483 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.foojay.api.discoclient.Constants;
+import io.foojay.api.nbplugin.DiscoApi.ApiResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+// Headless caching proxy for a team. Clients set the url and port of the discoclient to this server, the disco api
+// responses are cached and revalidated like in DiskCachedBundleProvider and the download links of the bundles point
+// to this server. Every bundle is fetched from upstream once, while that happens it is streamed to all clients that
+// ask for it and written to the ArchiveStore, later requests are served from there.
+public class BundleProxy {
+    private static final Logger                                              LOGGER            = LoggerFactory.getLogger(BundleProxy.class);
+    public  static final String                                              DOWNLOADS_PATH    = "/downloads";
+    public  static final int                                                 HTTP_OK           = 200;
+    public  static final int                                                 HTTP_PARTIAL      = 206;
+    public  static final int                                                 HTTP_NOT_FOUND    = 404;
+    public  static final int                                                 HTTP_BAD_METHOD   = 405;
+    public  static final int                                                 HTTP_BAD_GATEWAY  = 502;
+    private static final Pattern                                             FILE_INFO_PATH    = Pattern.compile(Constants.BUNDLES_PATH + "/(dl/)?[0-9]+");
+    private static final Pattern                                             DOWNLOAD_PATH     = Pattern.compile(DOWNLOADS_PATH + "/([0-9]+)/([^/]+)");
+    private static final Pattern                                             RANGE             = Pattern.compile("bytes=([0-9]+)-([0-9]*)");
+    private static final String[]                                            CHECKSUM_SUFFIXES = { ".sha256.txt", ".sha256" };
+    private static final int                                                 BUFFER_SIZE       = 64 * 1024;
+    private final        String                                              upstreamUrl;
+    private final        DiscoApi                                            discoApi;
+    private final        HttpClient                                          httpClient;
+    private final        BundleCache                                         cache;
+    private final        ArchiveStore                                        archiveStore;
+    private final        Path                                                transferDir;
+    private final        long                                                ttl;
+    private final        ExecutorService                                     executor;
+    private final        Map<String, CompletableFuture<ApiResponse<String>>> requests;
+    private final        Map<Long, String>                                   downloadLinks;
+    private final        Map<Long, Transfer>                                 transfers;
+    private              HttpServer                                          server;
+
+
+    public BundleProxy() {
+        this(DiscoApi.getBaseUrl(), PluginPropertyManager.INSTANCE.getConfigDir().resolve("proxy"));
+    }
+    public BundleProxy(final String upstreamUrl, final Path proxyDir) {
+        this(upstreamUrl, proxyDir, HttpClientFactory.getSharedClient());
+    }
+    public BundleProxy(final String upstreamUrl, final Path proxyDir, final HttpClient httpClient) {
+        this.upstreamUrl   = upstreamUrl;
+        this.executor      = ExecutorFactory.newExecutor("proxy");
+        this.discoApi      = new DiscoApi(httpClient);
+        this.httpClient    = httpClient;
+        this.cache         = new BundleCache(proxyDir.resolve("cache"));
+        this.archiveStore  = new ArchiveStore(proxyDir.resolve("store"), PluginPropertyManager.INSTANCE.getLong(PluginPropertyManager.PROPERTY_KEY_STORE_MAX_SIZE) * 1024 * 1024);
+        this.transferDir   = proxyDir.resolve("transfers");
+        this.ttl           = PluginPropertyManager.INSTANCE.getLong(PluginPropertyManager.PROPERTY_KEY_CACHE_TTL) * 1000;
+        this.requests      = new ConcurrentHashMap<>();
+        this.downloadLinks = new ConcurrentHashMap<>();
+        this.transfers     = new ConcurrentHashMap<>();
+    }
+
+
+    public void start(final int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/disco/", this::handleApi);
+        server.createContext(DOWNLOADS_PATH + "/", this::handleDownload);
+        server.start();
+        LOGGER.info("Proxy for {} listening on port {}", upstreamUrl, server.getAddress().getPort());
+    }
+
+    public void stop() {
+        if (null != server) { server.stop(0); }
+        executor.shutdownNow();
+    }
+
+    public int getPort() { return null == server ? -1 : server.getAddress().getPort(); }
+
+    public ArchiveStore getArchiveStore() { return archiveStore; }
+
+    private void handleApi(final HttpExchange exchange) {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(HTTP_BAD_METHOD, -1);
+                return;
+            }
+            final String path  = exchange.getRequestURI().getRawPath();
+            final String query = exchange.getRequestURI().getRawQuery();
+            final ApiResponse<String> response = fetch(upstreamUrl + path + (null == query ? "" : "?" + query));
+            String body = response.getBody();
+            if (response.getStatusCode() == HTTP_OK && FILE_INFO_PATH.matcher(path).matches()) { body = rewriteDownloadLink(body, exchange); }
+            sendText(exchange, response.getStatusCode(), body);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Error serving {} : {}", exchange.getRequestURI(), e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleDownload(final HttpExchange exchange) {
+        try {
+            final boolean head = "HEAD".equals(exchange.getRequestMethod());
+            if (!head && !"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(HTTP_BAD_METHOD, -1);
+                return;
+            }
+            final Matcher matcher = DOWNLOAD_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!matcher.matches()) {
+                exchange.sendResponseHeaders(HTTP_NOT_FOUND, -1);
+                return;
+            }
+            final long   bundleId     = Long.parseLong(matcher.group(1));
+            final String fileName     = matcher.group(2);
+            final String downloadLink = getDownloadLink(bundleId);
+            if (null == downloadLink) {
+                exchange.sendResponseHeaders(HTTP_NOT_FOUND, -1);
+                return;
+            }
+            for (String suffix : CHECKSUM_SUFFIXES) {
+                if (!fileName.endsWith(suffix)) { continue; }
+                final ApiResponse<String> response = fetch(downloadLink + suffix);
+                sendText(exchange, response.getStatusCode(), head ? null : response.getBody());
+                return;
+            }
+
+            final Path archive = archiveStore.getArchive(bundleId);
+            if (null != archive) {
+                sendArchive(exchange, archive, head);
+                return;
+            }
+            final Transfer transfer = transfers.computeIfAbsent(bundleId, id -> startTransfer(id, fileName, downloadLink));
+            if (!transfer.streamTo(exchange, head)) {
+                // The transfer finished in the meantime
+                final Path stored = archiveStore.getArchive(bundleId);
+                if (null == stored) {
+                    exchange.sendResponseHeaders(HTTP_BAD_GATEWAY, -1);
+                } else {
+                    sendArchive(exchange, stored, head);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Error serving {} : {}", exchange.getRequestURI(), e.getMessage());
+            sendBadGateway(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendBadGateway(exchange);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // A failed upstream transfer must not end in a closed connection without any status
+    private static void sendBadGateway(final HttpExchange exchange) {
+        if (exchange.getResponseCode() >= 0) { return; }
+        try {
+            exchange.sendResponseHeaders(HTTP_BAD_GATEWAY, -1);
+        } catch (IOException e) {
+            LOGGER.debug("Error sending status for {} : {}", exchange.getRequestURI(), e.getMessage());
+        }
+    }
+
+    // Concurrent requests for the same url wait for the one that is running instead of asking upstream again
+    private ApiResponse<String> fetch(final String url) throws IOException {
+        final BundleCache.Entry entry = cache.get(url);
+        if (null != entry && !entry.isExpired(ttl)) { return new ApiResponse<>(HTTP_OK, readBody(entry), entry.getETag(), entry.getLastModified()); }
+
+        final CompletableFuture<ApiResponse<String>> request = new CompletableFuture<>();
+        final CompletableFuture<ApiResponse<String>> running = requests.putIfAbsent(url, request);
+        if (null != running) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+        try {
+            final ApiResponse<String> response = revalidate(url, entry);
+            request.complete(response);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            request.completeExceptionally(e);
+            throw e;
+        } finally {
+            requests.remove(url, request);
+        }
+    }
+
+    private ApiResponse<String> revalidate(final String url, final BundleCache.Entry entry) throws IOException {
+        try {
+            final ApiResponse<String> response = discoApi.get(url, null == entry ? null : entry.getETag(), null == entry ? null : entry.getLastModified());
+            if (response.getStatusCode() == DiscoApi.HTTP_NOT_MODIFIED && null != entry) {
+                cache.touch(entry);
+                return new ApiResponse<>(HTTP_OK, readBody(entry), entry.getETag(), entry.getLastModified());
+            }
+            if (response.getStatusCode() == HTTP_OK) {
+                cache.put(url, response.getBody(), response.getETag(), response.getLastModified());
+                return response;
+            }
+            LOGGER.debug("Response ({}) {}", response.getStatusCode(), url);
+            // A stale answer is better than none if upstream has a problem
+            return null == entry ? response : new ApiResponse<>(HTTP_OK, readBody(entry), entry.getETag(), entry.getLastModified());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (IOException e) {
+            if (null == entry) { throw e; }
+            LOGGER.debug("Serving stale {} : {}", url, e.getMessage());
+            return new ApiResponse<>(HTTP_OK, readBody(entry), entry.getETag(), entry.getLastModified());
+        }
+    }
+
+    // The client has to download from this server, the link is relative to the host name the client used
+    private String rewriteDownloadLink(final String body, final HttpExchange exchange) {
+        try {
+            final JsonElement element = new Gson().fromJson(body, JsonElement.class);
+            if (!element.isJsonObject()) { return body; }
+            final JsonObject fileInfo = element.getAsJsonObject();
+            if (!fileInfo.has(Constants.ID) || !fileInfo.has(Constants.DOWNLOAD_LINK) || !fileInfo.has(Constants.FILENAME)) { return body; }
+            final long   bundleId = fileInfo.get(Constants.ID).getAsLong();
+            final String host     = exchange.getRequestHeaders().getFirst("Host");
+            downloadLinks.put(bundleId, fileInfo.get(Constants.DOWNLOAD_LINK).getAsString());
+            fileInfo.addProperty(Constants.DOWNLOAD_LINK, "http://" + (null == host ? "localhost:" + getPort() : host) + DOWNLOADS_PATH + "/" + bundleId + "/" + fileInfo.get(Constants.FILENAME).getAsString());
+            return fileInfo.toString();
+        } catch (RuntimeException e) {
+            LOGGER.debug("Error rewriting download link : {}", e.getMessage());
+            return body;
+        }
+    }
+
+    // After a restart the links are not known yet, they are in the cached file info then
+    private String getDownloadLink(final long bundleId) throws IOException {
+        final String downloadLink = downloadLinks.get(bundleId);
+        if (null != downloadLink) { return downloadLink; }
+        final ApiResponse<String> response = fetch(upstreamUrl + Constants.BUNDLES_PATH + "/" + bundleId);
+        if (response.getStatusCode() != HTTP_OK) { return null; }
+        try {
+            final JsonElement element = new Gson().fromJson(response.getBody(), JsonElement.class);
+            if (!element.isJsonObject() || !element.getAsJsonObject().has(Constants.DOWNLOAD_LINK)) { return null; }
+            final String link = element.getAsJsonObject().get(Constants.DOWNLOAD_LINK).getAsString();
+            downloadLinks.put(bundleId, link);
+            return link;
+        } catch (RuntimeException e) {
+            LOGGER.debug("Error reading file info of bundle {} : {}", bundleId, e.getMessage());
+            return null;
+        }
+    }
+
+    private Transfer startTransfer(final long bundleId, final String fileName, final String downloadLink) {
+        final Transfer transfer = new Transfer(bundleId, fileName, transferDir.resolve(bundleId + ".part"));
+        executor.execute(() -> transfer.run(downloadLink));
+        return transfer;
+    }
+
+    // Stored archives can be downloaded in byte ranges like from the original server
+    private void sendArchive(final HttpExchange exchange, final Path archive, final boolean head) throws IOException {
+        final long    fileSize = Files.size(archive);
+        final String  range    = exchange.getRequestHeaders().getFirst("Range");
+        final Matcher matcher  = null == range ? null : RANGE.matcher(range.trim());
+        long start = 0;
+        long end   = fileSize - 1;
+        if (null != matcher && matcher.matches()) {
+            start = Long.parseLong(matcher.group(1));
+            end   = matcher.group(2).isEmpty() ? end : Math.min(end, Long.parseLong(matcher.group(2)));
+        }
+        final boolean partial = start > 0 || end < fileSize - 1;
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        if (partial) { exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + fileSize); }
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", Long.toString(fileSize));
+            exchange.sendResponseHeaders(HTTP_OK, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(partial ? HTTP_PARTIAL : HTTP_OK, end - start + 1);
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ); OutputStream outputStream = exchange.getResponseBody()) {
+            copy(channel, start, end + 1, outputStream);
+        }
+    }
+
+    private void sendText(final HttpExchange exchange, final int statusCode, final String body) throws IOException {
+        final byte[] bytes = null == body ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (null == body) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(statusCode, 0 == bytes.length ? -1 : bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static long copy(final FileChannel channel, final long start, final long end, final OutputStream outputStream) throws IOException {
+        final ByteBuffer buffer   = ByteBuffer.allocate(BUFFER_SIZE);
+        long             position = start;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+            final int read = channel.read(buffer, position);
+            if (read < 0) { break; }
+            outputStream.write(buffer.array(), 0, read);
+            position += read;
+        }
+        return position;
+    }
+
+    private static String readBody(final BundleCache.Entry entry) throws IOException {
+        try (InputStream inputStream = entry.openBody()) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : PluginPropertyManager.INSTANCE.getInt(PluginPropertyManager.PROPERTY_KEY_PROXY_PORT);
+        new BundleProxy().start(port);
+    }
+
+
+    // ******************** Inner classes *************************************
+    // One upstream download, the clients read the part file up to the bytes written so far and wait for more
+    private class Transfer {
+        private final long        bundleId;
+        private final String      fileName;
+        private final Path        partFile;
+        private       long        fileSize;
+        private       long        written;
+        private       boolean     started;
+        private       boolean     finished;
+        private       boolean     deleted;
+        private       IOException failure;
+
+        Transfer(final long bundleId, final String fileName, final Path partFile) {
+            this.bundleId = bundleId;
+            this.fileName = fileName;
+            this.partFile = partFile;
+            this.fileSize = -1;
+        }
+
+        void run(final String downloadLink) {
+            String sha256 = null;
+            try {
+                Files.createDirectories(partFile.getParent());
+                final HttpResponse<InputStream> response = httpClient.send(HttpClientFactory.newRequest(downloadLink).GET().build(), BodyHandlers.ofInputStream());
+                try (InputStream body = response.body();
+                     FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    if (response.statusCode() != HTTP_OK) { throw new IOException("Response (" + response.statusCode() + ") " + downloadLink); }
+                    synchronized (this) {
+                        fileSize = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                        started  = true;
+                        notifyAll();
+                    }
+                    // Hashed on the way, so the store doesn't have to read the archive again
+                    final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    final byte[]        buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = body.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                        while (byteBuffer.hasRemaining()) { channel.write(byteBuffer); }
+                        synchronized (this) {
+                            written += read;
+                            notifyAll();
+                        }
+                    }
+                    if (fileSize >= 0 && written != fileSize) { throw new IOException("Received " + written + " of " + fileSize + " bytes from " + downloadLink); }
+                    final StringBuilder builder = new StringBuilder();
+                    for (byte b : digest.digest()) { builder.append(String.format("%02x", b)); }
+                    sha256 = builder.toString();
+                }
+                synchronized (this) {
+                    finished = true;
+                    notifyAll();
+                }
+                archiveStore.put(bundleId, null, fileName, partFile, sha256);
+                LOGGER.debug("Cached bundle {} ({} bytes)", fileName, written);
+            } catch (IOException e) {
+                fail(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new IOException(e));
+            } catch (NoSuchAlgorithmException e) {
+                fail(new IOException(e));
+            } finally {
+                // A request after the removal starts a new transfer on the same part file, which must not be deleted then
+                delete();
+                transfers.remove(bundleId, this);
+            }
+        }
+
+        // Returns false if the part file is gone already, the archive is in the store then
+        boolean streamTo(final HttpExchange exchange, final boolean head) throws IOException, InterruptedException {
+            final FileChannel channel;
+            final long        contentLength;
+            synchronized (this) {
+                while (!started && null == failure) { wait(); }
+                if (null != failure) { throw failure; }
+                if (deleted) { return false; }
+                channel       = FileChannel.open(partFile, StandardOpenOption.READ);
+                contentLength = fileSize;
+            }
+            try (channel) {
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                if (head) {
+                    if (contentLength >= 0) { exchange.getResponseHeaders().set("Content-Length", Long.toString(contentLength)); }
+                    exchange.sendResponseHeaders(HTTP_OK, -1);
+                    return true;
+                }
+                exchange.sendResponseHeaders(HTTP_OK, contentLength >= 0 ? contentLength : 0);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    long position = 0;
+                    while (true) {
+                        final long available;
+                        synchronized (this) {
+                            while (written <= position && !finished && null == failure) { wait(); }
+                            if (null != failure) { throw failure; }
+                            if (written <= position) { break; }
+                            available = written;
+                        }
+                        position = copy(channel, position, available, outputStream);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private synchronized void fail(final IOException e) {
+            LOGGER.debug("Error fetching bundle {} : {}", fileName, e.getMessage());
+            failure = e;
+            notifyAll();
+        }
+
+        private synchronized void delete() {
+            deleted = true;
+            try {
+                Files.deleteIfExists(partFile);
+            } catch (IOException e) {
+                LOGGER.debug("Error deleting {} : {}", partFile, e.getMessage());
+            }
+        }
+    }
+}
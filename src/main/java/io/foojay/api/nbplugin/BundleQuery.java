@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Architecture;
+import io.foojay.api.discoclient.bundle.Bitness;
+import io.foojay.api.discoclient.bundle.BundleType;
+import io.foojay.api.discoclient.bundle.Distribution;
+import io.foojay.api.discoclient.bundle.Extension;
+import io.foojay.api.discoclient.bundle.Latest;
+import io.foojay.api.discoclient.bundle.OperatingSystem;
+import io.foojay.api.discoclient.bundle.ReleaseStatus;
+import io.foojay.api.discoclient.bundle.SupportTerm;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+
+import java.util.Objects;
+
+
+public class BundleQuery {
+    public  static final BundleQuery ALL = new BundleQuery(Distribution.NONE, null, Latest.NONE, OperatingSystem.NONE, Architecture.NONE, Bitness.NONE,
+                                                           Extension.NONE, BundleType.NONE, null, ReleaseStatus.NONE, SupportTerm.NONE);
+    private final        Distribution    distribution;
+    private final        VersionNumber   versionNumber;
+    private final        Latest          latest;
+    private final        OperatingSystem operatingSystem;
+    private final        Architecture    architecture;
+    private final        Bitness         bitness;
+    private final        Extension       extension;
+    private final        BundleType      bundleType;
+    private final        Boolean         fx;
+    private final        ReleaseStatus   releaseStatus;
+    private final        SupportTerm     supportTerm;
+
+
+    public BundleQuery(final Distribution distribution, final VersionNumber versionNumber, final Latest latest, final OperatingSystem operatingSystem,
+                       final Architecture architecture, final Bitness bitness, final Extension extension, final BundleType bundleType, final Boolean fx,
+                       final ReleaseStatus releaseStatus, final SupportTerm supportTerm) {
+        this.distribution    = distribution;
+        this.versionNumber   = versionNumber;
+        this.latest          = latest;
+        this.operatingSystem = operatingSystem;
+        this.architecture    = architecture;
+        this.bitness         = bitness;
+        this.extension       = extension;
+        this.bundleType      = bundleType;
+        this.fx              = fx;
+        this.releaseStatus   = releaseStatus;
+        this.supportTerm     = supportTerm;
+    }
+
+
+    public Distribution getDistribution() { return distribution; }
+
+    public VersionNumber getVersionNumber() { return versionNumber; }
+
+    public Latest getLatest() { return latest; }
+
+    public OperatingSystem getOperatingSystem() { return operatingSystem; }
+
+    public Architecture getArchitecture() { return architecture; }
+
+    public Bitness getBitness() { return bitness; }
+
+    public Extension getExtension() { return extension; }
+
+    public BundleType getBundleType() { return bundleType; }
+
+    public Boolean getFx() { return fx; }
+
+    public ReleaseStatus getReleaseStatus() { return releaseStatus; }
+
+    public SupportTerm getSupportTerm() { return supportTerm; }
+
+    @Override public boolean equals(final Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        BundleQuery that = (BundleQuery) o;
+        return distribution    == that.distribution    &&
+               latest          == that.latest          &&
+               operatingSystem == that.operatingSystem &&
+               architecture    == that.architecture    &&
+               bitness         == that.bitness         &&
+               extension       == that.extension       &&
+               bundleType      == that.bundleType      &&
+               releaseStatus   == that.releaseStatus   &&
+               supportTerm     == that.supportTerm     &&
+               Objects.equals(fx, that.fx)             &&
+               Objects.equals(versionNumber, that.versionNumber);
+    }
+
+    @Override public int hashCode() {
+        return Objects.hash(distribution, versionNumber, latest, operatingSystem, architecture, bitness, extension, bundleType, fx, releaseStatus, supportTerm);
+    }
+
+    @Override public String toString() {
+        return new StringBuilder().append("BundleQuery{")
+                                  .append("distribution=").append(distribution)
+                                  .append(", versionNumber=").append(versionNumber)
+                                  .append(", latest=").append(latest)
+                                  .append(", operatingSystem=").append(operatingSystem)
+                                  .append(", architecture=").append(architecture)
+                                  .append(", bitness=").append(bitness)
+                                  .append(", extension=").append(extension)
+                                  .append(", bundleType=").append(bundleType)
+                                  .append(", fx=").append(fx)
+                                  .append(", releaseStatus=").append(releaseStatus)
+                                  .append(", supportTerm=").append(supportTerm)
+                                  .append("}")
+                                  .toString();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+
+// Sorts the rows of a BundleTableModel by the int sort keys of its columns instead of comparing cell values.
+// Every sort key is one pass that sorts (key << 32 | current view index) as longs, starting with the least
+// significant key, so rows with equal keys keep the order of the previous pass and in the end the model order.
+// A BundleTableFilter hides rows through the bitset of its search index, only the remaining rows are sorted.
+public class BundleRowSorter extends RowSorter<BundleTableModel> {
+    private static final int               MAX_SORT_KEYS = 3;
+    private final        BundleTableModel  model;
+    private              List<SortKey>     sortKeys;
+    private              BundleTableFilter rowFilter;
+    private              int[]             viewToModel;
+    private              int[]             spareViewToModel;
+    private              int[]             modelToView;
+    private              long[]            scratch;
+
+
+    public BundleRowSorter(final BundleTableModel model) {
+        this.model    = model;
+        this.sortKeys = Collections.emptyList();
+        this.scratch  = new long[0];
+    }
+
+
+    @Override public BundleTableModel getModel() { return model; }
+
+    // Same behaviour as a TableRowSorter, the clicked column becomes the primary key or changes its direction
+    @Override public void toggleSortOrder(final int column) {
+        checkColumn(column);
+        final List<SortKey> keys = new ArrayList<>(sortKeys);
+        if (!keys.isEmpty() && keys.get(0).getColumn() == column) {
+            final SortOrder order = keys.get(0).getSortOrder() == SortOrder.ASCENDING ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+            keys.set(0, new SortKey(column, order));
+        } else {
+            keys.removeIf(key -> key.getColumn() == column);
+            keys.add(0, new SortKey(column, SortOrder.ASCENDING));
+            if (keys.size() > MAX_SORT_KEYS) { keys.remove(MAX_SORT_KEYS); }
+        }
+        setSortKeys(keys);
+    }
+
+    @Override public int convertRowIndexToModel(final int index) {
+        if (null == viewToModel) { return index; }
+        if (index < 0 || index >= viewToModel.length) { throw new IndexOutOfBoundsException("Invalid index " + index); }
+        return viewToModel[index];
+    }
+
+    @Override public int convertRowIndexToView(final int index) {
+        if (null == modelToView) { return index; }
+        if (index < 0 || index >= modelToView.length) { throw new IndexOutOfBoundsException("Invalid index " + index); }
+        return modelToView[index];
+    }
+
+    @Override public void setSortKeys(final List<? extends SortKey> keys) {
+        final List<SortKey> newKeys = new ArrayList<>();
+        if (null != keys) {
+            for (SortKey key : keys) {
+                checkColumn(key.getColumn());
+                if (key.getSortOrder() != SortOrder.UNSORTED) { newKeys.add(key); }
+            }
+        }
+        if (newKeys.equals(sortKeys)) { return; }
+        sortKeys = Collections.unmodifiableList(newKeys);
+        fireSortOrderChanged();
+        sort();
+    }
+
+    @Override public List<? extends SortKey> getSortKeys() { return sortKeys; }
+
+    public BundleTableFilter getRowFilter() { return rowFilter; }
+    public void setRowFilter(final BundleTableFilter rowFilter) {
+        this.rowFilter = null == rowFilter || rowFilter.isEmpty() ? null : rowFilter;
+        sort();
+    }
+
+    @Override public int getViewRowCount() { return null == viewToModel ? model.getRowCount() : viewToModel.length; }
+
+    @Override public int getModelRowCount() { return model.getRowCount(); }
+
+    @Override public void modelStructureChanged() {
+        sortKeys = Collections.emptyList();
+        sort();
+    }
+
+    @Override public void allRowsChanged() { sort(); }
+
+    @Override public void rowsInserted(final int firstRow, final int endRow) { sort(); }
+
+    @Override public void rowsDeleted(final int firstRow, final int endRow) { sort(); }
+
+    // Like a TableRowSorter the order is not changed by updates, a row stays where the user sees it
+    @Override public void rowsUpdated(final int firstRow, final int endRow) {}
+
+    @Override public void rowsUpdated(final int firstRow, final int endRow, final int column) { checkColumn(column); }
+
+    private void sort() {
+        final int[]  lastViewToModel = viewToModel;
+        final int    modelRowCount   = model.getRowCount();
+        final BitSet rows            = null == rowFilter ? null : rowFilter.select(model.getSearchIndex());
+        if (sortKeys.isEmpty() && null == rows) {
+            viewToModel = null;
+            modelToView = null;
+            fireRowSorterChanged(lastViewToModel);
+            return;
+        }
+
+        // The previous mapping goes with the event, the spare buffer takes the new one
+        final int   rowCount = null == rows ? modelRowCount : rows.cardinality();
+        final int[] order    = null != spareViewToModel && spareViewToModel.length == rowCount ? spareViewToModel : new int[rowCount];
+        if (null == rows) {
+            for (int i = 0 ; i < rowCount ; i++) { order[i] = i; }
+        } else {
+            for (int i = 0, row = rows.nextSetBit(0) ; i < rowCount ; i++, row = rows.nextSetBit(row + 1)) { order[i] = row; }
+        }
+        if (scratch.length < rowCount) { scratch = new long[rowCount]; }
+
+        for (int k = sortKeys.size() - 1 ; k >= 0 ; k--) {
+            final SortKey sortKey    = sortKeys.get(k);
+            final int[]   keys       = model.getSortKeys(sortKey.getColumn());
+            final boolean descending = sortKey.getSortOrder() == SortOrder.DESCENDING;
+            for (int i = 0 ; i < rowCount ; i++) {
+                final int key = keys[order[i]];
+                scratch[i] = ((long) (descending ? ~key : key) << 32) | i;
+            }
+            Arrays.sort(scratch, 0, rowCount);
+            for (int i = 0 ; i < rowCount ; i++) { scratch[i] = order[(int) scratch[i]]; }
+            for (int i = 0 ; i < rowCount ; i++) { order[i] = (int) scratch[i]; }
+        }
+
+        if (null == modelToView || modelToView.length != modelRowCount) { modelToView = new int[modelRowCount]; }
+        if (null != rows) { Arrays.fill(modelToView, -1); }
+        for (int i = 0 ; i < rowCount ; i++) { modelToView[order[i]] = i; }
+        viewToModel      = order;
+        spareViewToModel = lastViewToModel;
+        fireRowSorterChanged(lastViewToModel);
+    }
+
+    private void checkColumn(final int column) {
+        if (column < 0 || column >= model.getColumnCount()) { throw new IndexOutOfBoundsException("Invalid column " + column); }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.BundleType;
+import io.foojay.api.discoclient.bundle.Distribution;
+import io.foojay.api.discoclient.bundle.Extension;
+import io.foojay.api.discoclient.bundle.ReleaseStatus;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+
+// Immutable index over the rows of a BundleTableModel. Every word of the texts a row shows (and of its file name)
+// is a token with the ascending rows it appears in. Most tokens of file names appear in a few rows only, so they
+// get row arrays instead of bitsets. The tokens are sorted, so all tokens that start with a typed prefix form one
+// range. Vendors, release status and extensions have a bitset per value, versions a sorted array.
+public class BundleSearchIndex {
+    private static final BitSet                     EMPTY = new BitSet();
+    private final        int                        size;
+    private final        String[]                   tokens;
+    private final        int[][]                    tokenRows;
+    private final        Map<String, BitSet>        vendors;
+    private final        Map<ReleaseStatus, BitSet> releaseStatus;
+    private final        Map<Extension, BitSet>     extensions;
+    private final        long[]                     versions;
+    private final        int[]                      rowsByVersion;
+
+
+    public BundleSearchIndex(final BundleList bundles) {
+        final BundleStore         store       = bundles.getStore();
+        final TokenTable          tokenTable  = new TokenTable();
+        // Rows with the same version or enum values share their tokens, they are looked up once per value
+        final Rows[][]            versionRows = new Rows[store.getVersionDictionarySize()][];
+        final Map<Object, Rows[]> valueRows   = new HashMap<>();
+        final int[]               rowRefs     = new int[bundles.size()];
+
+        size          = bundles.size();
+        vendors       = new HashMap<>();
+        releaseStatus = new EnumMap<>(ReleaseStatus.class);
+        extensions    = new EnumMap<>(Extension.class);
+
+        for (int row = 0 ; row < size ; row++) {
+            final int           position     = bundles.getPosition(row);
+            final Distribution  distribution = store.getDistribution(position);
+            final ReleaseStatus status       = store.getReleaseStatus(position);
+            final Extension     extension    = store.getExtension(position);
+            final int           versionRef   = store.getVersionRef(position);
+            if (null == versionRows[versionRef]) { versionRows[versionRef] = tokenTable.rowsOf(String.valueOf(store.getVersionForRef(versionRef))); }
+            add(versionRows[versionRef], row);
+            add(rowsOf(tokenTable, valueRows, distribution, d -> d.getUiString() + " " + d.getVendor()), row);
+            add(rowsOf(tokenTable, valueRows, store.getBundleType(position), BundleType::getUiString), row);
+            add(rowsOf(tokenTable, valueRows, status, ReleaseStatus::name), row);
+            add(rowsOf(tokenTable, valueRows, extension, Extension::getUiString), row);
+            // File names are mostly unique, their tokens are not, so only new tokens create strings
+            tokenTable.add(store.getFileName(position), row);
+            if (null != distribution && null != distribution.getVendor()) { vendors.computeIfAbsent(distribution.getVendor(), v -> new BitSet(size)).set(row); }
+            if (null != status)    { releaseStatus.computeIfAbsent(status, s -> new BitSet(size)).set(row); }
+            if (null != extension) { extensions.computeIfAbsent(extension, e -> new BitSet(size)).set(row); }
+            rowRefs[row] = versionRef;
+        }
+
+        tokens    = tokenTable.getTokens();
+        Arrays.sort(tokens);
+        tokenRows = new int[tokens.length][];
+        for (int i = 0 ; i < tokens.length ; i++) { tokenRows[i] = tokenTable.get(tokens[i]).toArray(); }
+
+        // Rows ordered by their packed version, a version range is one range of this array. There are far fewer
+        // versions than rows, so the versions are sorted and the rows are counted into place.
+        final long[]    refVersions = new long[versionRows.length];
+        final Integer[] refs        = new Integer[versionRows.length];
+        for (int ref = 0 ; ref < refs.length ; ref++) {
+            refVersions[ref] = BundleStore.pack(store.getVersionForRef(ref));
+            refs[ref]        = ref;
+        }
+        Arrays.sort(refs, (r1, r2) -> Long.compareUnsigned(refVersions[r1], refVersions[r2]));
+        final int[] starts = new int[refs.length + 1];
+        for (int row = 0 ; row < size ; row++) { starts[rowRefs[row] + 1]++; }
+        final int[] refStarts = new int[refs.length];
+        for (int i = 0, start = 0 ; i < refs.length ; i++) {
+            refStarts[refs[i]] = start;
+            start += starts[refs[i] + 1];
+        }
+        rowsByVersion = new int[size];
+        versions      = new long[size];
+        for (int row = 0 ; row < size ; row++) {
+            final int index = refStarts[rowRefs[row]]++;
+            rowsByVersion[index] = row;
+            versions[index]      = refVersions[rowRefs[row]];
+        }
+    }
+
+
+    public int size() { return size; }
+
+    // Rows that contain a token starting with every one of the typed words, all rows if nothing was typed
+    public BitSet selectText(final String text) {
+        final BitSet selection = all();
+        for (String word : tokenize(text)) {
+            final BitSet wordRows = new BitSet(size);
+            for (int i = lowerBound(word) ; i < tokens.length && tokens[i].startsWith(word) ; i++) {
+                for (int row : tokenRows[i]) { wordRows.set(row); }
+            }
+            selection.and(wordRows);
+            if (selection.isEmpty()) { break; }
+        }
+        return selection;
+    }
+
+    public BitSet getRowsOfVendor(final String vendor) { return vendors.getOrDefault(vendor, EMPTY); }
+
+    public BitSet getRowsOfReleaseStatus(final ReleaseStatus status) { return releaseStatus.getOrDefault(status, EMPTY); }
+
+    public BitSet getRowsOfExtension(final Extension extension) { return extensions.getOrDefault(extension, EMPTY); }
+
+    // Rows with a packed version between min and max (both inclusive)
+    public BitSet selectVersions(final long min, final long max) {
+        final BitSet selection = new BitSet(size);
+        for (int i = lowerBound(min) ; i < size && Long.compareUnsigned(versions[i], max) <= 0 ; i++) { selection.set(rowsByVersion[i]); }
+        return selection;
+    }
+
+    public BitSet all() {
+        final BitSet selection = new BitSet(size);
+        selection.set(0, size);
+        return selection;
+    }
+
+    // Lower case runs of letters, digits and dots, without leading and trailing dots
+    private static List<String> tokenize(final String text) {
+        final List<String> words = new ArrayList<>();
+        if (null == text) { return words; }
+        for (int start = nextRun(text, 0) ; start < text.length() ; start = nextRun(text, runEnd(text, start))) {
+            final int end = trimDots(text, start, runEnd(text, start));
+            if (end > start) { words.add(text.substring(start, end).toLowerCase(Locale.ENGLISH)); }
+        }
+        return words;
+    }
+
+    private static boolean isWordChar(final char c) { return c == '.' || Character.isLetterOrDigit(c); }
+
+    // Start of the next run without its leading dots, or the length of the text
+    private static int nextRun(final String text, final int from) {
+        int i = from;
+        while (i < text.length() && (text.charAt(i) == '.' || !isWordChar(text.charAt(i)))) { i++; }
+        return i;
+    }
+
+    private static int runEnd(final String text, final int start) {
+        int i = start;
+        while (i < text.length() && isWordChar(text.charAt(i))) { i++; }
+        return i;
+    }
+
+    private static int trimDots(final String text, final int start, final int end) {
+        int i = end;
+        while (i > start && text.charAt(i - 1) == '.') { i--; }
+        return i;
+    }
+
+    private static <T> Rows[] rowsOf(final TokenTable tokenTable, final Map<Object, Rows[]> valueRows, final T value, final Function<T, String> text) {
+        if (null == value) { return new Rows[0]; }
+        Rows[] rows = valueRows.get(value);
+        if (null == rows) {
+            rows = tokenTable.rowsOf(text.apply(value));
+            valueRows.put(value, rows);
+        }
+        return rows;
+    }
+
+    private static void add(final Rows[] rowsOfTokens, final int row) {
+        for (Rows rows : rowsOfTokens) { rows.add(row); }
+    }
+
+    private int lowerBound(final String word) {
+        int low  = 0;
+        int high = tokens.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (tokens[mid].compareTo(word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lowerBound(final long version) {
+        int low  = 0;
+        int high = versions.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(versions[mid], version) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    // ******************** Inner classes *************************************
+    // Rows are added in ascending order, a token that shows up twice in one row is kept once
+    private static class Rows {
+        private int[] rows = new int[4];
+        private int   size;
+
+        public void add(final int row) {
+            if (size > 0 && rows[size - 1] == row) { return; }
+            if (size == rows.length) { rows = Arrays.copyOf(rows, size * 2); }
+            rows[size++] = row;
+        }
+
+        public int[] toArray() { return Arrays.copyOf(rows, size); }
+    }
+
+    // Open addressing table from lower case tokens to their rows. Tokens are looked up by a range of the text,
+    // a string is only created for a token that is not in the table yet. Runs with dots like 17.0.2 are added
+    // as a whole and as their parts, a typed 17.0 then matches 17.0.2 and a typed 2 matches it too.
+    private static class TokenTable {
+        private String[] keys   = new String[1024];
+        private Rows[]   values = new Rows[1024];
+        private int      size;
+
+        public void add(final String text, final int row) { scan(text, row, null); }
+
+        // Rows of all tokens of the text, for values that many rows share
+        public Rows[] rowsOf(final String text) {
+            final List<Rows> found = new ArrayList<>();
+            scan(text, -1, found);
+            return found.toArray(new Rows[0]);
+        }
+
+        public Rows get(final String token) { return get(token, 0, token.length()); }
+
+        public String[] getTokens() {
+            final String[] tokens = new String[size];
+            int            index  = 0;
+            for (String key : keys) {
+                if (null != key) { tokens[index++] = key; }
+            }
+            return tokens;
+        }
+
+        // Adds the row to the rows of every token of the text, or collects these rows if found is given
+        private void scan(final String text, final int row, final List<Rows> found) {
+            if (null == text) { return; }
+            for (int start = nextRun(text, 0) ; start < text.length() ; ) {
+                final int runEnd = runEnd(text, start);
+                final int end    = trimDots(text, start, runEnd);
+                visit(get(text, start, end), row, found);
+                if (text.lastIndexOf('.', end - 1) >= start) {
+                    for (int partStart = start ; partStart < end ; ) {
+                        final int dot     = text.indexOf('.', partStart);
+                        final int partEnd = dot < 0 || dot > end ? end : dot;
+                        if (partEnd > partStart) { visit(get(text, partStart, partEnd), row, found); }
+                        partStart = partEnd + 1;
+                    }
+                }
+                start = nextRun(text, runEnd);
+            }
+        }
+
+        private static void visit(final Rows rows, final int row, final List<Rows> found) {
+            if (null == found) {
+                rows.add(row);
+            } else if (!found.contains(rows)) {
+                found.add(rows);
+            }
+        }
+
+        private Rows get(final String text, final int start, final int end) {
+            final int length = end - start;
+            int       slot   = hash(text, start, end) & (keys.length - 1);
+            while (null != keys[slot]) {
+                if (keys[slot].length() == length && keys[slot].regionMatches(true, 0, text, start, length)) { return values[slot]; }
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            keys[slot]   = text.substring(start, end).toLowerCase(Locale.ENGLISH);
+            values[slot] = new Rows();
+            if (++size * 2 > keys.length) { grow(); }
+            return get(text, start, end);
+        }
+
+        private void grow() {
+            final String[] oldKeys   = keys;
+            final Rows[]   oldValues = values;
+            keys   = new String[oldKeys.length * 2];
+            values = new Rows[oldKeys.length * 2];
+            for (int i = 0 ; i < oldKeys.length ; i++) {
+                if (null == oldKeys[i]) { continue; }
+                int slot = hash(oldKeys[i], 0, oldKeys[i].length()) & (keys.length - 1);
+                while (null != keys[slot]) { slot = (slot + 1) & (keys.length - 1); }
+                keys[slot]   = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int hash(final String text, final int start, final int end) {
+            int hash = 0;
+            for (int i = start ; i < end ; i++) { hash = 31 * hash + Character.toLowerCase(text.charAt(i)); }
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import com.google.gson.JsonObject;
+import io.foojay.api.discoclient.bundle.Architecture;
+import io.foojay.api.discoclient.bundle.Bitness;
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.BundleType;
+import io.foojay.api.discoclient.bundle.Distribution;
+import io.foojay.api.discoclient.bundle.Extension;
+import io.foojay.api.discoclient.bundle.OperatingSystem;
+import io.foojay.api.discoclient.bundle.ReleaseStatus;
+import io.foojay.api.discoclient.bundle.SupportTerm;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+
+
+// Column oriented storage of bundles. Enums are kept as byte ordinals, versions as packed longs plus a reference
+// into a dictionary of shared VersionNumber instances, file names as one utf-8 blob and download links as a
+// dictionary encoded prefix in front of the file name. Bundles are appended by a single thread and read after
+// the store has been handed over.
+public class BundleStore {
+    private static final int                       INITIAL_CAPACITY  = 256;
+    private static final byte                      NULL_ORDINAL      = -1;
+    private static final Distribution[]            DISTRIBUTIONS     = Distribution.values();
+    private static final OperatingSystem[]         OPERATING_SYSTEMS = OperatingSystem.values();
+    private static final Architecture[]            ARCHITECTURES     = Architecture.values();
+    private static final Bitness[]                 BITNESSES         = Bitness.values();
+    private static final BundleType[]              BUNDLE_TYPES      = BundleType.values();
+    private static final ReleaseStatus[]           RELEASE_STATUS    = ReleaseStatus.values();
+    private static final Extension[]               EXTENSIONS        = Extension.values();
+    private static final SupportTerm[]             SUPPORT_TERMS     = SupportTerm.values();
+    private final        Dictionary<VersionNumber> versionDictionary;
+    private final        Dictionary<String>        linkDictionary;
+    private final        BitSet                    fx;
+    private final        BitSet                    fullLinks;
+    private              int                       size;
+    private              long[]                    ids;
+    private              byte[]                    distributions;
+    private              byte[]                    operatingSystems;
+    private              byte[]                    architectures;
+    private              byte[]                    bitnesses;
+    private              byte[]                    bundleTypes;
+    private              byte[]                    releaseStatus;
+    private              byte[]                    extensions;
+    private              byte[]                    supportTerms;
+    private              long[]                    versions;
+    private              int[]                     versionRefs;
+    private              int[]                     javaVersionRefs;
+    private              int[]                     distributionVersionRefs;
+    private              int[]                     linkRefs;
+    private              int[]                     fileNameOffsets;
+    private              byte[]                    fileNameData;
+
+
+    public BundleStore() {
+        this(INITIAL_CAPACITY);
+    }
+    public BundleStore(final int capacity) {
+        final int initialCapacity = Math.max(capacity, 1);
+        versionDictionary       = new Dictionary<>();
+        linkDictionary          = new Dictionary<>();
+        fx                      = new BitSet(initialCapacity);
+        fullLinks               = new BitSet(initialCapacity);
+        ids                     = new long[initialCapacity];
+        distributions           = new byte[initialCapacity];
+        operatingSystems        = new byte[initialCapacity];
+        architectures           = new byte[initialCapacity];
+        bitnesses               = new byte[initialCapacity];
+        bundleTypes             = new byte[initialCapacity];
+        releaseStatus           = new byte[initialCapacity];
+        extensions              = new byte[initialCapacity];
+        supportTerms            = new byte[initialCapacity];
+        versions                = new long[initialCapacity];
+        versionRefs             = new int[initialCapacity];
+        javaVersionRefs         = new int[initialCapacity];
+        distributionVersionRefs = new int[initialCapacity];
+        linkRefs                = new int[initialCapacity];
+        fileNameOffsets         = new int[initialCapacity + 1];
+        fileNameData            = new byte[initialCapacity * 32];
+    }
+
+
+    public static BundleStore of(final List<Bundle> bundles) {
+        final BundleStore store = new BundleStore(bundles.size());
+        bundles.forEach(store::add);
+        return store;
+    }
+
+    public int size() { return size; }
+
+    public int add(final Bundle bundle) {
+        return add(bundle.getId(), bundle.getDistribution(), bundle.getVersionNumber(), bundle.getJavaVersion(), bundle.getDistributionVersion(),
+                   bundle.getOperatingSystem(), bundle.getArchitecture(), bundle.getBitness(), bundle.getBundleType(), bundle.getReleaseStatus(),
+                   bundle.getExtension(), bundle.getSupportTerm(), bundle.getFX(), bundle.getFileName(), bundle.getDownloadLink());
+    }
+    public int add(final long id, final Distribution distribution, final VersionNumber versionNumber, final VersionNumber javaVersion,
+                   final VersionNumber distributionVersion, final OperatingSystem operatingSystem, final Architecture architecture, final Bitness bitness,
+                   final BundleType bundleType, final ReleaseStatus releaseStatus, final Extension extension, final SupportTerm supportTerm,
+                   final boolean fx, final String fileName, final String downloadLink) {
+        ensureCapacity(size + 1);
+        final int position = size;
+        ids[position]                     = id;
+        distributions[position]           = toOrdinal(distribution);
+        operatingSystems[position]        = toOrdinal(operatingSystem);
+        architectures[position]           = toOrdinal(architecture);
+        bitnesses[position]               = toOrdinal(bitness);
+        bundleTypes[position]             = toOrdinal(bundleType);
+        this.releaseStatus[position]      = toOrdinal(releaseStatus);
+        extensions[position]              = toOrdinal(extension);
+        supportTerms[position]            = toOrdinal(supportTerm);
+        versions[position]                = pack(versionNumber);
+        versionRefs[position]             = versionDictionary.add(versionNumber);
+        javaVersionRefs[position]         = versionDictionary.add(javaVersion);
+        distributionVersionRefs[position] = versionDictionary.add(distributionVersion);
+        if (fx) { this.fx.set(position); }
+
+        final String name = null == fileName ? "" : fileName;
+        final String link = null == downloadLink ? "" : downloadLink;
+        if (link.endsWith(name)) {
+            linkRefs[position] = linkDictionary.add(link.substring(0, link.length() - name.length()));
+        } else {
+            linkRefs[position] = linkDictionary.add(link);
+            fullLinks.set(position);
+        }
+        appendFileName(position, name);
+
+        size++;
+        return position;
+    }
+
+    // Copies a row of another store, the version numbers and strings are taken over as they are
+    public int add(final BundleStore source, final int position) {
+        return add(source.getId(position), source.getDistribution(position), source.getVersionNumber(position), source.getJavaVersion(position),
+                   source.getDistributionVersion(position), source.getOperatingSystem(position), source.getArchitecture(position), source.getBitness(position),
+                   source.getBundleType(position), source.getReleaseStatus(position), source.getExtension(position), source.getSupportTerm(position),
+                   source.isFx(position), source.getFileName(position), source.getDownloadLink(position));
+    }
+
+    public long getId(final int position) { return ids[position]; }
+
+    public Distribution getDistribution(final int position) { return fromOrdinal(DISTRIBUTIONS, distributions[position]); }
+
+    public OperatingSystem getOperatingSystem(final int position) { return fromOrdinal(OPERATING_SYSTEMS, operatingSystems[position]); }
+
+    public Architecture getArchitecture(final int position) { return fromOrdinal(ARCHITECTURES, architectures[position]); }
+
+    public Bitness getBitness(final int position) { return fromOrdinal(BITNESSES, bitnesses[position]); }
+
+    public BundleType getBundleType(final int position) { return fromOrdinal(BUNDLE_TYPES, bundleTypes[position]); }
+
+    public ReleaseStatus getReleaseStatus(final int position) { return fromOrdinal(RELEASE_STATUS, releaseStatus[position]); }
+
+    public Extension getExtension(final int position) { return fromOrdinal(EXTENSIONS, extensions[position]); }
+
+    public SupportTerm getSupportTerm(final int position) { return fromOrdinal(SUPPORT_TERMS, supportTerms[position]); }
+
+    public boolean isFx(final int position) { return fx.get(position); }
+
+    // Feature, interim, update and patch with 16 bit each, comparing the packed values compares the versions
+    public long getPackedVersion(final int position) { return versions[position]; }
+
+    public int getFeatureVersion(final int position) { return (int) (versions[position] >>> 48); }
+
+    public VersionNumber getVersionNumber(final int position) { return versionDictionary.get(versionRefs[position]); }
+
+    public VersionNumber getJavaVersion(final int position) { return versionDictionary.get(javaVersionRefs[position]); }
+
+    public VersionNumber getDistributionVersion(final int position) { return versionDictionary.get(distributionVersionRefs[position]); }
+
+    // Rows with equal versions share one reference, refs index into getVersionDictionarySize() entries
+    public int getVersionRef(final int position) { return versionRefs[position]; }
+
+    public int getVersionDictionarySize() { return versionDictionary.size(); }
+
+    public VersionNumber getVersionForRef(final int ref) { return versionDictionary.get(ref); }
+
+    public String getFileName(final int position) {
+        return new String(fileNameData, fileNameOffsets[position], fileNameOffsets[position + 1] - fileNameOffsets[position], StandardCharsets.UTF_8);
+    }
+
+    public String getDownloadLink(final int position) {
+        final String link = linkDictionary.get(linkRefs[position]);
+        return fullLinks.get(position) ? link : link + getFileName(position);
+    }
+
+    // Creates a real Bundle, only meant for the few rows that leave the store (e.g. the selected row)
+    public Bundle toBundle(final int position) {
+        final JsonObject json = new JsonObject();
+        json.addProperty(Bundle.FIELD_ID, getId(position));
+        addProperty(json, Bundle.FIELD_DISTRIBUTION, null == getDistribution(position) ? null : getDistribution(position).name());
+        addProperty(json, Bundle.FIELD_VERSION, getVersionNumber(position));
+        addProperty(json, Bundle.FIELD_JAVA_VERSION, getJavaVersion(position));
+        addProperty(json, Bundle.FIELD_DISTRIBUTION_VERSION, getDistributionVersion(position));
+        addProperty(json, Bundle.FIELD_ARCHITECTURE, null == getArchitecture(position) ? null : getArchitecture(position).getApiString());
+        if (null != getBitness(position)) { json.addProperty(Bundle.FIELD_BITNESS, getBitness(position).getAsInt()); }
+        addProperty(json, Bundle.FIELD_OPERATING_SYSTEM, toApiString(getOperatingSystem(position)));
+        addProperty(json, Bundle.FIELD_BUNDLE_TYPE, null == getBundleType(position) ? null : getBundleType(position).getApiString());
+        addProperty(json, Bundle.FIELD_RELEASE_STATUS, null == getReleaseStatus(position) ? null : getReleaseStatus(position).getApiString());
+        addProperty(json, Bundle.FIELD_EXTENSION, null == getExtension(position) ? null : getExtension(position).getApiString());
+        addProperty(json, Bundle.FIELD_SUPPORT_TERM, null == getSupportTerm(position) ? null : getSupportTerm(position).getApiString());
+        json.addProperty(Bundle.FIELD_JAVAFX, isFx(position));
+        addProperty(json, Bundle.FIELD_FILENAME, getFileName(position));
+        addProperty(json, Bundle.FIELD_DOWNLOAD_LINK, getDownloadLink(position));
+        return new Bundle(json.toString());
+    }
+
+    public RowView rowView() { return new RowView(this); }
+
+    public static long pack(final VersionNumber versionNumber) {
+        if (null == versionNumber) { return 0; }
+        return (component(versionNumber.getFeature()) << 48) | (component(versionNumber.getInterim()) << 32) |
+               (component(versionNumber.getUpdate()) << 16)  |  component(versionNumber.getPatch());
+    }
+
+    private static long component(final OptionalInt value) { return value.isPresent() ? Math.min(value.getAsInt(), 0xFFFF) & 0xFFFF : 0; }
+
+    private void appendFileName(final int position, final String fileName) {
+        final byte[] bytes = fileName.getBytes(StandardCharsets.UTF_8);
+        final int    start = fileNameOffsets[position];
+        if (start + bytes.length > fileNameData.length) {
+            fileNameData = Arrays.copyOf(fileNameData, Math.max(fileNameData.length * 2, start + bytes.length));
+        }
+        System.arraycopy(bytes, 0, fileNameData, start, bytes.length);
+        fileNameOffsets[position + 1] = start + bytes.length;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= ids.length) { return; }
+        final int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids                     = Arrays.copyOf(ids, newCapacity);
+        distributions           = Arrays.copyOf(distributions, newCapacity);
+        operatingSystems        = Arrays.copyOf(operatingSystems, newCapacity);
+        architectures           = Arrays.copyOf(architectures, newCapacity);
+        bitnesses               = Arrays.copyOf(bitnesses, newCapacity);
+        bundleTypes             = Arrays.copyOf(bundleTypes, newCapacity);
+        releaseStatus           = Arrays.copyOf(releaseStatus, newCapacity);
+        extensions              = Arrays.copyOf(extensions, newCapacity);
+        supportTerms            = Arrays.copyOf(supportTerms, newCapacity);
+        versions                = Arrays.copyOf(versions, newCapacity);
+        versionRefs             = Arrays.copyOf(versionRefs, newCapacity);
+        javaVersionRefs         = Arrays.copyOf(javaVersionRefs, newCapacity);
+        distributionVersionRefs = Arrays.copyOf(distributionVersionRefs, newCapacity);
+        linkRefs                = Arrays.copyOf(linkRefs, newCapacity);
+        fileNameOffsets         = Arrays.copyOf(fileNameOffsets, newCapacity + 1);
+    }
+
+    private static byte toOrdinal(final Enum<?> value) { return null == value ? NULL_ORDINAL : (byte) value.ordinal(); }
+
+    private static <T> T fromOrdinal(final T[] values, final byte ordinal) { return ordinal == NULL_ORDINAL ? null : values[ordinal]; }
+
+    private static void addProperty(final JsonObject json, final String key, final Object value) {
+        if (null == value) { return; }
+        json.addProperty(key, value.toString());
+    }
+
+    // OperatingSystem.fromText() doesn't know the api string of ALPINE_LINUX
+    private static String toApiString(final OperatingSystem operatingSystem) {
+        if (null == operatingSystem) { return null; }
+        return OperatingSystem.ALPINE_LINUX == operatingSystem ? "alpine-linux" : operatingSystem.getApiString();
+    }
+
+
+    // ******************** Inner classes *************************************
+    // Flyweight that points to one row of the store, moveTo() re-targets it without allocating
+    public static class RowView {
+        private final BundleStore store;
+        private       int         position;
+
+        private RowView(final BundleStore store) {
+            this.store = store;
+        }
+
+        public RowView moveTo(final int position) {
+            this.position = position;
+            return this;
+        }
+
+        public int getPosition() { return position; }
+
+        public long getId() { return store.getId(position); }
+
+        public Distribution getDistribution() { return store.getDistribution(position); }
+
+        public String getDistributionName() { return null == getDistribution() ? "" : getDistribution().name(); }
+
+        public VersionNumber getVersionNumber() { return store.getVersionNumber(position); }
+
+        public long getPackedVersion() { return store.getPackedVersion(position); }
+
+        public OperatingSystem getOperatingSystem() { return store.getOperatingSystem(position); }
+
+        public Architecture getArchitecture() { return store.getArchitecture(position); }
+
+        public Bitness getBitness() { return store.getBitness(position); }
+
+        public BundleType getBundleType() { return store.getBundleType(position); }
+
+        public ReleaseStatus getReleaseStatus() { return store.getReleaseStatus(position); }
+
+        public Extension getExtension() { return store.getExtension(position); }
+
+        public SupportTerm getSupportTerm() { return store.getSupportTerm(position); }
+
+        public boolean isFx() { return store.isFx(position); }
+
+        public String getFileName() { return store.getFileName(position); }
+
+        public String getDownloadLink() { return store.getDownloadLink(position); }
+
+        public Bundle toBundle() { return store.toBundle(position); }
+    }
+
+    private static class Dictionary<T> {
+        private final Map<T, Integer> refs   = new HashMap<>();
+        private final List<T>         values = new ArrayList<>();
+
+        public int add(final T value) {
+            return refs.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+
+        public T get(final int ref) { return values.get(ref); }
+
+        public int size() { return values.size(); }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Extension;
+import io.foojay.api.discoclient.bundle.ReleaseStatus;
+
+import javax.swing.RowFilter;
+import java.util.BitSet;
+
+
+// Narrows the rows of a BundleTableModel without a new query: typed words, a vendor, a release status, an
+// extension and a version range (e.g. 11 to 17.0.2). The rows come from the search index of the model as bitset,
+// which is kept until the model gets new rows.
+public class BundleTableFilter extends RowFilter<BundleTableModel, Integer> {
+    public  static final BundleTableFilter NONE          = new BundleTableFilter("", null, ReleaseStatus.NONE, Extension.NONE, "", "");
+    private static final int               COMPONENTS    = 4;
+    private static final int               COMPONENT_MAX = 0xFFFF;
+    private final        String            text;
+    private final        String            vendor;
+    private final        ReleaseStatus     releaseStatus;
+    private final        Extension         extension;
+    private final        long              minVersion;
+    private final        long              maxVersion;
+    private              BundleSearchIndex selectedIndex;
+    private              BitSet            selection;
+
+
+    // Empty texts, a null vendor and NONE for release status and extension don't filter
+    public BundleTableFilter(final String text, final String vendor, final ReleaseStatus releaseStatus, final Extension extension, final String minVersion, final String maxVersion) {
+        this.text          = null == text ? "" : text.trim();
+        this.vendor        = vendor;
+        this.releaseStatus = releaseStatus;
+        this.extension     = extension;
+        this.minVersion    = parseVersion(minVersion, false);
+        this.maxVersion    = parseVersion(maxVersion, true);
+    }
+
+
+    public boolean isEmpty() {
+        return text.isEmpty() && null == vendor && BundleFilter.isAny(releaseStatus) && BundleFilter.isAny(extension) && minVersion == 0 && maxVersion == -1;
+    }
+
+    // The rows of the model that pass the filter, only the first call after the model got new rows uses the index
+    public BitSet select(final BundleSearchIndex index) {
+        if (index == selectedIndex) { return selection; }
+        final BitSet rows = index.selectText(text);
+        if (null != vendor)                     { rows.and(index.getRowsOfVendor(vendor)); }
+        if (!BundleFilter.isAny(releaseStatus)) { rows.and(index.getRowsOfReleaseStatus(releaseStatus)); }
+        if (!BundleFilter.isAny(extension))     { rows.and(index.getRowsOfExtension(extension)); }
+        if (minVersion != 0 || maxVersion != -1) { rows.and(index.selectVersions(minVersion, maxVersion)); }
+        selectedIndex = index;
+        selection     = rows;
+        return rows;
+    }
+
+    @Override public boolean include(final Entry<? extends BundleTableModel, ? extends Integer> entry) {
+        return select(entry.getModel().getSearchIndex()).get(entry.getIdentifier());
+    }
+
+    // Packs the version like the BundleStore does, missing components of an upper bound match every value.
+    // Anything that is not a version leaves the bound open.
+    private static long parseVersion(final String text, final boolean upper) {
+        final long open = upper ? -1 : 0;
+        if (null == text || text.isBlank()) { return open; }
+        final String[] components = text.trim().split("\\.");
+        if (components.length > COMPONENTS) { return open; }
+        long packed = 0;
+        for (int i = 0 ; i < COMPONENTS ; i++) {
+            int value = upper ? COMPONENT_MAX : 0;
+            if (i < components.length) {
+                try {
+                    value = Math.min(Integer.parseInt(components[i]), COMPONENT_MAX);
+                } catch (NumberFormatException e) {
+                    return open;
+                }
+                if (value < 0) { return open; }
+            }
+            packed = (packed << 16) | value;
+        }
+        return packed;
+    }
+}
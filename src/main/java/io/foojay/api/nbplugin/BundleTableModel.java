@@ -23,24 +23,135 @@ import io.foojay.api.discoclient.bundle.Extension;
 import io.foojay.api.discoclient.bundle.ReleaseStatus;
 import io.foojay.api.discoclient.bundle.SupportTerm;
 import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.nbplugin.BundleStore.RowView;
 
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.Function;
 
 
+// Cells are read from the column store, texts and sort ranks of the enum columns are computed once per enum
+// constant and the sort keys of a column once per result set, so painting and sorting don't create objects
 public class BundleTableModel extends AbstractTableModel {
-    private String[]     columnNames = { "Version", "Distribution", "Vendor", "Bundle Type", "Release Status", "Extension" };
-    private List<Bundle> bundles;
+    public  static final Comparator<RowView> DEFAULT_ORDER        = Comparator.comparing(RowView::getDistributionName)
+                                                                              .thenComparing(RowView::getVersionNumber, Comparator.reverseOrder())
+                                                                              .thenComparing(RowView::getOperatingSystem)
+                                                                              .thenComparing(RowView::getArchitecture);
+    public  static final int                 CACHED_COLUMN        = 6;
+    private static final int                 MAX_INSERT_EVENTS    = 64;
+    private static final String[]            DISTRIBUTION_NAMES   = texts(Distribution.values(), Distribution::getUiString);
+    private static final String[]            VENDORS              = texts(Distribution.values(), Distribution::getVendor);
+    private static final String[]            BUNDLE_TYPE_NAMES    = texts(BundleType.values(), BundleType::getUiString);
+    private static final String[]            RELEASE_STATUS_NAMES = texts(ReleaseStatus.values(), ReleaseStatus::name);
+    private static final String[]            EXTENSION_NAMES      = texts(Extension.values(), Extension::getUiString);
+    private static final int[]               DISTRIBUTION_RANKS   = ranks(DISTRIBUTION_NAMES);
+    private static final int[]               VENDOR_RANKS         = ranks(VENDORS);
+    private static final int[]               BUNDLE_TYPE_RANKS    = ranks(BUNDLE_TYPE_NAMES);
+    private static final int[]               RELEASE_STATUS_RANKS = ranks(RELEASE_STATUS_NAMES);
+    private static final int[]               EXTENSION_RANKS      = ranks(EXTENSION_NAMES);
+    private              String[]            columnNames          = { "Version", "Distribution", "Vendor", "Bundle Type", "Release Status", "Extension", "Cached" };
+    private final        int[][]             sortKeys             = new int[columnNames.length][];
+    private              BundleSearchIndex   searchIndex;
+    private              BundleList          bundles;
+    private              RowView             rowView;
+    private              boolean             ownsStore;
+    private              ArchiveStore        archiveStore;
 
 
     public BundleTableModel(final List<Bundle> bundles) {
-        this.bundles = bundles;
+        setBundles(bundles);
     }
 
 
     public List<Bundle> getBundles() { return bundles; }
+    // Rows are read from the column store through one flyweight instead of Bundle objects
     public void setBundles(final List<Bundle> bundles) {
-        this.bundles = bundles;
+        this.bundles   = BundleList.of(null == bundles ? List.of() : bundles);
+        this.rowView   = this.bundles.getStore().rowView();
+        this.ownsStore = false;
+        Arrays.fill(sortKeys, null);
+        searchIndex = null;
+    }
+
+    // True if the rows are exactly the bundles of the list, e.g. when a streamed result arrived completely
+    public boolean hasSameBundles(final BundleList other) {
+        if (other.size() != bundles.size()) { return false; }
+        final long[] ids      = new long[bundles.size()];
+        final long[] otherIds = new long[other.size()];
+        for (int i = 0 ; i < ids.length ; i++) {
+            ids[i]      = bundles.getStore().getId(bundles.getPosition(i));
+            otherIds[i] = other.getStore().getId(other.getPosition(i));
+        }
+        Arrays.sort(ids);
+        Arrays.sort(otherIds);
+        return Arrays.equals(ids, otherIds);
+    }
+
+    // Rows of bundles that are in the store are marked in the Cached column
+    public void setArchiveStore(final ArchiveStore archiveStore) {
+        this.archiveStore = archiveStore;
+        fireTableDataChanged();
+    }
+
+    // Called after a download went into the store or others were evicted from it
+    public void updateCached() {
+        if (getRowCount() > 0) { fireTableChanged(new TableModelEvent(this, 0, getRowCount() - 1, CACHED_COLUMN)); }
+    }
+
+    public void clear() {
+        setBundles(List.of());
+        fireTableDataChanged();
+    }
+
+    // Inserts the rows of the batch at their place in DEFAULT_ORDER and fires one insert event per contiguous run
+    public void addBundles(final BundleStore batch) {
+        if (batch.size() == 0) { return; }
+        if (!ownsStore) { copyStore(batch.size()); }
+
+        final BundleStore store = bundles.getStore();
+        final int[]       added = new int[batch.size()];
+        for (int i = 0 ; i < added.length ; i++) { added[i] = store.add(batch, i); }
+        final BundleList  sortedBatch = new BundleList(store, added).sorted(DEFAULT_ORDER);
+
+        final RowView left      = store.rowView();
+        final RowView right     = store.rowView();
+        final int     oldSize   = bundles.size();
+        final int[]   merged    = new int[oldSize + added.length];
+        final int[]   runStarts = new int[added.length];
+        final int[]   runEnds   = new int[added.length];
+        int           runs      = 0;
+        int           i         = 0;
+        int           j         = 0;
+        for (int k = 0 ; k < merged.length ; k++) {
+            final boolean takeNew = j < added.length &&
+                                    (i >= oldSize || DEFAULT_ORDER.compare(left.moveTo(sortedBatch.getPosition(j)), right.moveTo(bundles.getPosition(i))) < 0);
+            if (takeNew) {
+                merged[k] = sortedBatch.getPosition(j++);
+                if (runs > 0 && runEnds[runs - 1] == k - 1) {
+                    runEnds[runs - 1] = k;
+                } else {
+                    runStarts[runs] = k;
+                    runEnds[runs]   = k;
+                    runs++;
+                }
+            } else {
+                merged[k] = bundles.getPosition(i++);
+            }
+        }
+        bundles = new BundleList(store, merged);
+        Arrays.fill(sortKeys, null);
+        searchIndex = null;
+
+        // Lots of scattered runs cost the row sorter more than a complete refresh
+        if (runs > MAX_INSERT_EVENTS) {
+            fireTableDataChanged();
+        } else {
+            for (int r = 0 ; r < runs ; r++) { fireTableRowsInserted(runStarts[r], runEnds[r]); }
+        }
     }
 
     public String getColumnName(final int col) {
@@ -50,7 +161,8 @@ public class BundleTableModel extends AbstractTableModel {
             case 2 :
             case 3 :
             case 4 :
-            case 5 : return columnNames[col];
+            case 5 :
+            case 6 : return columnNames[col];
             default: return null;
         }
     }
@@ -58,62 +170,67 @@ public class BundleTableModel extends AbstractTableModel {
     public Class getColumnClass(final int col) {
         switch(col) {
             case 0 : return VersionNumber.class;
-            case 1 : return Distribution.class;
-            case 2 : return String.class;
-            case 3 : return BundleType.class;
-            case 4 : return ReleaseStatus.class;
-            case 5 : return Extension.class;
+            case 1 :
+            case 2 :
+            case 3 :
+            case 4 :
+            case 5 : return String.class;
+            case 6 : return Boolean.class;
             default: return null;
         }
     }
 
     public Bundle getBundle(final int row) {
-        if (row < 0 || row > getRowCount()) { return null; }
+        if (row < 0 || row >= getRowCount()) { return null; }
         return bundles.get(row);
     }
 
+    public long getId(final int row) {
+        if (row < 0 || row >= getRowCount()) { return -1; }
+        return row(row).getId();
+    }
+
     public VersionNumber getVersionNumber(final int row) {
-        if (row < 0 || row > getRowCount()) { return null; }
-        return bundles.get(row).getVersionNumber();
+        if (row < 0 || row >= getRowCount()) { return null; }
+        return row(row).getVersionNumber();
     }
 
     public Distribution getDistribution(final int row) {
-        if (row < 0 || row > getRowCount()) { return null; }
-        return bundles.get(row).getDistribution();
+        if (row < 0 || row >= getRowCount()) { return null; }
+        return row(row).getDistribution();
     }
 
     public String getVendor(final int row) {
-        if (row < 0 || row > getRowCount()) { return null; }
-        return bundles.get(row).getDistribution().getVendor();
+        if (row < 0 || row >= getRowCount()) { return null; }
+        return row(row).getDistribution().getVendor();
     }
 
     public BundleType getBundleType(final int row) {
-        if (row < 0 || row > getRowCount()) { return null; }
-        return bundles.get(row).getBundleType();
+        if (row < 0 || row >= getRowCount()) { return null; }
+        return row(row).getBundleType();
     }
 
     public SupportTerm getSupportTerm(final int row) {
-        if (row < 0 || row > getRowCount()) { return null; }
-        return bundles.get(row).getSupportTerm();
+        if (row < 0 || row >= getRowCount()) { return null; }
+        return row(row).getSupportTerm();
     }
 
     public ReleaseStatus getReleaseStatus(final int row) {
-        if (row < 0 || row > getRowCount()) { return null; }
-        return bundles.get(row).getReleaseStatus();
+        if (row < 0 || row >= getRowCount()) { return null; }
+        return row(row).getReleaseStatus();
     }
 
     public Extension getExtension(final int row) {
-        if (row < 0 || row > getRowCount()) { return null; }
-        return bundles.get(row).getExtension();
+        if (row < 0 || row >= getRowCount()) { return null; }
+        return row(row).getExtension();
     }
 
     public String getFilename(final int row) {
-        if (row < 0 || row > getRowCount()) { return null; }
-        return bundles.get(row).getFileName();
+        if (row < 0 || row >= getRowCount()) { return null; }
+        return row(row).getFileName();
     }
 
     @Override public int getRowCount() {
-        if (null == bundles) { return 0; }
         return bundles.size();
     }
 
@@ -122,16 +239,104 @@ public class BundleTableModel extends AbstractTableModel {
     }
 
     @Override public Object getValueAt(final int row, final int col) {
-        if (row < 0 || row > bundles.size()) { return null; }
-        final Bundle bundle = bundles.get(row);
+        if (row < 0 || row >= bundles.size()) { return null; }
+        final RowView bundle = row(row);
         switch(col) {
             case 0 : return bundle.getVersionNumber();
-            case 1 : return bundle.getDistribution().getUiString();
-            case 2 : return bundle.getDistribution().getVendor();
-            case 3 : return bundle.getBundleType().getUiString();
-            case 4 : return bundle.getReleaseStatus().name();
-            case 5 : return bundle.getExtension().getUiString();
+            case 1 : return text(DISTRIBUTION_NAMES, bundle.getDistribution());
+            case 2 : return text(VENDORS, bundle.getDistribution());
+            case 3 : return text(BUNDLE_TYPE_NAMES, bundle.getBundleType());
+            case 4 : return text(RELEASE_STATUS_NAMES, bundle.getReleaseStatus());
+            case 5 : return text(EXTENSION_NAMES, bundle.getExtension());
+            case 6 : return isCached(bundle.getId());
             default: return null;
         }
     }
+
+    // Sort key of every model row in the given column, rows with equal keys show equal values. The keys are
+    // computed on first use after the rows changed, the ones of the Cached column every time.
+    public int[] getSortKeys(final int col) {
+        if (col == CACHED_COLUMN) { return computeSortKeys(col); }
+        if (null == sortKeys[col]) { sortKeys[col] = computeSortKeys(col); }
+        return sortKeys[col];
+    }
+
+    // Built on first use after the rows changed, rows that stream in don't rebuild it while nothing is filtered
+    public BundleSearchIndex getSearchIndex() {
+        if (null == searchIndex) { searchIndex = new BundleSearchIndex(bundles); }
+        return searchIndex;
+    }
+
+    private int[] computeSortKeys(final int col) {
+        final BundleStore store        = bundles.getStore();
+        final int[]       versionRanks = col == 0 ? versionRanks(store) : null;
+        final int[]       keys         = new int[bundles.size()];
+        for (int row = 0 ; row < keys.length ; row++) {
+            final int position = bundles.getPosition(row);
+            switch(col) {
+                case 0 : keys[row] = versionRanks[store.getVersionRef(position)]; break;
+                case 1 : keys[row] = rank(DISTRIBUTION_RANKS, store.getDistribution(position)); break;
+                case 2 : keys[row] = rank(VENDOR_RANKS, store.getDistribution(position)); break;
+                case 3 : keys[row] = rank(BUNDLE_TYPE_RANKS, store.getBundleType(position)); break;
+                case 4 : keys[row] = rank(RELEASE_STATUS_RANKS, store.getReleaseStatus(position)); break;
+                case 5 : keys[row] = rank(EXTENSION_RANKS, store.getExtension(position)); break;
+                case 6 : keys[row] = isCached(store.getId(position)) ? 1 : 0; break;
+                default: break;
+            }
+        }
+        return keys;
+    }
+
+    private boolean isCached(final long id) { return null != archiveStore && archiveStore.contains(id); }
+
+    private RowView row(final int row) { return rowView.moveTo(bundles.getPosition(row)); }
+
+    // Versions are ranked once per distinct version of the store instead of being compared row by row
+    private static int[] versionRanks(final BundleStore store) {
+        final Comparator<VersionNumber> order = Comparator.nullsFirst(Comparator.naturalOrder());
+        final Integer[]                 refs  = new Integer[store.getVersionDictionarySize()];
+        Arrays.setAll(refs, i -> i);
+        Arrays.sort(refs, (r1, r2) -> order.compare(store.getVersionForRef(r1), store.getVersionForRef(r2)));
+        final int[] ranks = new int[refs.length];
+        for (int i = 1 ; i < refs.length ; i++) {
+            final boolean equal = order.compare(store.getVersionForRef(refs[i - 1]), store.getVersionForRef(refs[i])) == 0;
+            ranks[refs[i]] = equal ? ranks[refs[i - 1]] : i;
+        }
+        return ranks;
+    }
+
+    private static <T extends Enum<T>> String[] texts(final T[] values, final Function<T, String> text) {
+        final String[] texts = new String[values.length];
+        for (T value : values) { texts[value.ordinal()] = null == text.apply(value) ? "" : text.apply(value); }
+        return texts;
+    }
+
+    // Same order as the Collator based string comparison of a TableRowSorter, equal texts get equal ranks
+    private static int[] ranks(final String[] texts) {
+        final Collator  collator  = Collator.getInstance();
+        final Integer[] ordinals  = new Integer[texts.length];
+        Arrays.setAll(ordinals, i -> i);
+        Arrays.sort(ordinals, (o1, o2) -> collator.compare(texts[o1], texts[o2]));
+        final int[] ranks = new int[texts.length];
+        for (int i = 1 ; i < ordinals.length ; i++) {
+            final boolean equal = collator.compare(texts[ordinals[i - 1]], texts[ordinals[i]]) == 0;
+            ranks[ordinals[i]] = equal ? ranks[ordinals[i - 1]] : i;
+        }
+        return ranks;
+    }
+
+    private static String text(final String[] texts, final Enum<?> value) { return null == value ? "" : texts[value.ordinal()]; }
+
+    // Missing values sort in front of all others
+    private static int rank(final int[] ranks, final Enum<?> value) { return null == value ? -1 : ranks[value.ordinal()]; }
+
+    // Rows are only appended to a store that belongs to the model, shared results stay untouched
+    private void copyStore(final int additionalCapacity) {
+        final BundleStore store     = new BundleStore(bundles.size() + additionalCapacity);
+        final int[]       positions = new int[bundles.size()];
+        for (int i = 0 ; i < positions.length ; i++) { positions[i] = store.add(bundles.getStore(), bundles.getPosition(i)); }
+        bundles   = new BundleList(store, positions);
+        rowView   = store.rowView();
+        ownsStore = true;
+    }
 }
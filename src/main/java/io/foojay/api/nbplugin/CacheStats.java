@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+// Hits and misses of all caches of one name, created and registered in JMX by Metrics.getCache
+public class CacheStats implements CacheStatsMBean {
+    private final String    name;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder revalidations;
+    private final LongAdder staleHits;
+    private final LongAdder coalesced;
+    private final LongAdder evictions;
+
+
+    public CacheStats(final String name) {
+        this.name          = name;
+        this.hits          = new LongAdder();
+        this.misses        = new LongAdder();
+        this.revalidations = new LongAdder();
+        this.staleHits     = new LongAdder();
+        this.coalesced     = new LongAdder();
+        this.evictions     = new LongAdder();
+    }
+
+
+    @Override public String getName() { return name; }
+
+    @Override public long getHits() { return hits.sum(); }
+    public void recordHit() { hits.increment(); }
+
+    @Override public long getMisses() { return misses.sum(); }
+    public void recordMiss() { misses.increment(); }
+
+    // Expired entries that the server confirmed with 304 Not Modified
+    @Override public long getRevalidations() { return revalidations.sum(); }
+    public void recordRevalidation() { revalidations.increment(); }
+
+    // Expired entries that were served because the server could not be reached
+    @Override public long getStaleHits() { return staleHits.sum(); }
+    public void recordStaleHit() { staleHits.increment(); }
+
+    // Requests that waited for an identical request already in flight instead of calling the server
+    @Override public long getCoalesced() { return coalesced.sum(); }
+    public void recordCoalesced() { coalesced.increment(); }
+
+    @Override public long getEvictions() { return evictions.sum(); }
+    public void recordEviction() { evictions.increment(); }
+
+    @Override public double getHitRate() {
+        long served = getHits() + getRevalidations() + getStaleHits() + getCoalesced();
+        long total  = served + getMisses();
+        return total == 0 ? 0 : (double) served / (double) total;
+    }
+
+    @Override public String toString() {
+        return new StringBuilder().append(name).append("{")
+                                  .append("hits=").append(getHits())
+                                  .append(", misses=").append(getMisses())
+                                  .append(", revalidations=").append(getRevalidations())
+                                  .append(", staleHits=").append(getStaleHits())
+                                  .append(", coalesced=").append(getCoalesced())
+                                  .append(", evictions=").append(getEvictions())
+                                  .append(", hitRate=").append(String.format("%.2f", getHitRate()))
+                                  .append("}")
+                                  .toString();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.Release;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.util.BundleFileInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+
+// Loads the whole catalog in the background and answers bundle queries locally from then on. Once the catalog is
+// older than the cache ttl the next query triggers a reload, a failed load is retried after a growing delay.
+public class CatalogBundleProvider implements BundleProvider {
+    private static final Logger                          LOGGER          = LoggerFactory.getLogger(CatalogBundleProvider.class);
+    private static final long                            MIN_RETRY_DELAY = TimeUnit.SECONDS.toMillis(5);
+    private final        BundleProvider                  delegate;
+    private final        Executor                        executor;
+    private final        long                            ttl;
+    private volatile     BundleIndex                     catalog;
+    private volatile     CompletableFuture<List<Bundle>> loading;
+    private              long                            loadedAt;
+    private              long                            nextAttempt;
+    private              long                            retryDelay;
+
+
+    public CatalogBundleProvider(final BundleProvider delegate, final Executor executor) {
+        this(delegate, executor, TimeUnit.SECONDS.toMillis(PluginPropertyManager.INSTANCE.getLong(PluginPropertyManager.PROPERTY_KEY_CACHE_TTL)));
+    }
+    public CatalogBundleProvider(final BundleProvider delegate, final Executor executor, final long ttl) {
+        this.delegate   = delegate;
+        this.executor   = executor;
+        this.ttl        = ttl;
+        this.retryDelay = MIN_RETRY_DELAY;
+        refresh();
+    }
+
+
+    public boolean isLoaded() { return null != catalog; }
+
+    public CompletableFuture<List<Bundle>> getLoading() { return loading; }
+
+    // Starts a load unless one is running, the catalog is still fresh or the last failed load is too recent
+    private synchronized void refresh() {
+        final long now = System.currentTimeMillis();
+        if (null != loading && !loading.isDone()) { return; }
+        if (null != catalog && now - loadedAt < ttl) { return; }
+        if (now < nextAttempt) { return; }
+        try {
+            final CompletableFuture<List<Bundle>> future = CompletableFuture.supplyAsync(() -> delegate.getBundles(BundleQuery.ALL), executor);
+            loading = future;
+            future.whenComplete(this::onLoaded);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Catalog could not be loaded : {}", e.getMessage());
+        }
+    }
+
+    // The old catalog stays in use until a new one is complete
+    private void onLoaded(final List<Bundle> bundles, final Throwable throwable) {
+        final BundleIndex index = null == throwable && null != bundles && !bundles.isEmpty() ? new BundleIndex(BundleList.of(bundles)) : null;
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            if (null == index) {
+                LOGGER.debug("Catalog could not be loaded ({}), retrying in {} ms", null == throwable ? "no bundles" : throwable.getMessage(), retryDelay);
+                nextAttempt = now + retryDelay;
+                retryDelay  = Math.min(retryDelay * 2, Math.max(ttl, MIN_RETRY_DELAY));
+                return;
+            }
+            catalog     = index;
+            loadedAt    = now;
+            nextAttempt = 0;
+            retryDelay  = MIN_RETRY_DELAY;
+            LOGGER.debug("Catalog with {} bundles loaded", bundles.size());
+        }
+    }
+
+    // Until the catalog is available the queries go to the server as before
+    @Override public List<Bundle> getBundles(final BundleQuery query) {
+        refresh();
+        final BundleIndex index = catalog;
+        if (null == index) { return delegate.getBundles(query); }
+        return BundleQuery.ALL.equals(query) ? index.getBundles() : index.getBundles(query);
+    }
+
+    @Override public List<Bundle> getBundles(final BundleQuery query, final ObjIntConsumer<BundleStore> consumer) {
+        // Local results are complete right away, so there is nothing to stream
+        refresh();
+        if (null == catalog) { return delegate.getBundles(query, consumer); }
+        return getBundles(query);
+    }
+
+    @Override public BundleFileInfo getBundleFileInfo(final long bundleId, final VersionNumber versionNumber) {
+        return delegate.getBundleFileInfo(bundleId, versionNumber);
+    }
+
+    @Override public BundleFileInfo getBundleFileInfoSCDL(final long bundleId, final VersionNumber versionNumber) {
+        return delegate.getBundleFileInfoSCDL(bundleId, versionNumber);
+    }
+
+    @Override public Release getRelease(final String release) {
+        return delegate.getRelease(release);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import javax.swing.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+
+// Hands values from any thread to the EDT with at most one update per frame. Values that arrive in between only
+// replace the one in the slot, so the consumer always gets the latest value and the EDT queue never floods.
+public class CoalescingUpdater<T> {
+    public  static final long                     FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+    private static final ScheduledExecutorService SCHEDULER   = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ui-update-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final        Consumer<T>              consumer;
+    private final        AtomicReference<T>       latest;
+    private final        AtomicBoolean            scheduled;
+    private volatile     long                     lastDrain;
+
+
+    public CoalescingUpdater(final Consumer<T> consumer) {
+        this.consumer  = consumer;
+        this.latest    = new AtomicReference<>();
+        this.scheduled = new AtomicBoolean();
+    }
+
+
+    public void update(final T value) {
+        latest.set(value);
+        if (!scheduled.compareAndSet(false, true)) { return; }
+        final long wait = FRAME_NANOS - (System.nanoTime() - lastDrain);
+        if (wait <= 0) {
+            SwingUtilities.invokeLater(this::drain);
+        } else {
+            SCHEDULER.schedule(() -> SwingUtilities.invokeLater(this::drain), wait, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // The flag is reset before the slot is read, so a value that arrives while draining schedules the next frame
+    private void drain() {
+        scheduled.set(false);
+        lastDrain = System.nanoTime();
+        final T value = latest.getAndSet(null);
+        if (null != value) { consumer.accept(value); }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import io.foojay.api.discoclient.Constants;
+import io.foojay.api.discoclient.PropertyManager;
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.Release;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.util.BundleFileInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+
+// Plain HTTP access to the disco api, builds the same urls as the discoclient but exposes the response headers
+public class DiscoApi {
+    private static final Logger     LOGGER            = LoggerFactory.getLogger(DiscoApi.class);
+    public  static final int        HTTP_OK           = 200;
+    public  static final int        HTTP_NOT_MODIFIED = 304;
+    public  static final int        HTTP_BAD_REQUEST  = 400;
+    private final        HttpClient httpClient;
+
+
+    public DiscoApi() {
+        this(HttpClientFactory.getSharedClient());
+    }
+    public DiscoApi(final HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+
+    public HttpClient getHttpClient() { return httpClient; }
+
+    public ApiResponse<String> get(final String url, final String eTag, final String lastModified) throws IOException, InterruptedException {
+        final ApiResponse<InputStream> response = getStream(url, eTag, lastModified);
+        try (InputStream body = response.getBody()) {
+            return new ApiResponse<>(response.getStatusCode(), new String(body.readAllBytes(), StandardCharsets.UTF_8), response.getETag(), response.getLastModified());
+        }
+    }
+
+    // The body is handed over unread but already decompressed, the caller has to close it. The call is measured
+    // until the body is closed, so the time includes reading (and parsing) the payload.
+    public ApiResponse<InputStream> getStream(final String url, final String eTag, final String lastModified) throws IOException, InterruptedException {
+        final Metrics.Sample      sample   = Metrics.INSTANCE.start(Metrics.getOperationOf(url));
+        HttpResponse<InputStream> response = null;
+        try {
+            response = httpClient.send(createRequest(url, eTag, lastModified), BodyHandlers.ofInputStream());
+            return new ApiResponse<>(response.statusCode(), new MeteredInputStream(HttpClientFactory.decode(response), sample, response.statusCode() >= HTTP_BAD_REQUEST),
+                                     response.headers().firstValue("ETag").orElse(""),
+                                     response.headers().firstValue("Last-Modified").orElse(""));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            sample.stop(0, true);
+            // E.g. a broken gzip header, nobody else gets the body to close it
+            if (null != response) {
+                try {
+                    response.body().close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+            throw e;
+        }
+    }
+
+    // Bundles are parsed while the response is read, like the discoclient an empty list is returned on errors
+    public BundleList getBundles(final BundleQuery query, final ObjIntConsumer<BundleStore> consumer) {
+        final String url = getBundlesUrl(query);
+        try {
+            ApiResponse<InputStream> response = getStream(url, null, null);
+            try (InputStream body = response.getBody()) {
+                if (response.getStatusCode() == HTTP_OK) { return BundleJsonParser.parse(body, consumer); }
+            }
+            LOGGER.debug("Response ({}) {}", response.getStatusCode(), url);
+        } catch (InterruptedException | InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            // The parser throws runtime exceptions on json with unexpected types or numbers
+            LOGGER.debug("Error fetching bundles from {} : {}", url, e.getMessage());
+        }
+        return BundleList.of(new BundleStore());
+    }
+
+    // Same json fields and same null on errors as DiscoClient.getBundleFileInfo(), but over the shared connections
+    public BundleFileInfo getBundleFileInfo(final long bundleId, final VersionNumber versionNumber, final boolean scdl) {
+        final String url = getBundleFileInfoUrl(bundleId, scdl);
+        try {
+            final ApiResponse<String> response = get(url, null, null);
+            if (response.getStatusCode() != HTTP_OK) {
+                LOGGER.debug("Response ({}) {}", response.getStatusCode(), url);
+                return null;
+            }
+            return parseBundleFileInfo(response.getBody(), versionNumber);
+        } catch (InterruptedException | InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.debug("Error fetching bundle file info from {} : {}", url, e.getMessage());
+        }
+        return null;
+    }
+
+    public Release getRelease(final String release) {
+        final String url = getReleaseUrl(release);
+        try {
+            final ApiResponse<String> response = get(url, null, null);
+            if (response.getStatusCode() == HTTP_OK) { return parseRelease(response.getBody()); }
+            LOGGER.debug("Response ({}) {}", response.getStatusCode(), url);
+        } catch (InterruptedException | InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | JsonParseException e) {
+            LOGGER.debug("Error fetching release from {} : {}", url, e.getMessage());
+        }
+        return null;
+    }
+
+    private HttpRequest createRequest(final String url, final String eTag, final String lastModified) {
+        HttpRequest.Builder requestBuilder = HttpClientFactory.newCompressedRequest(url).GET();
+        if (null != eTag && !eTag.isEmpty())                 { requestBuilder.header("If-None-Match", eTag); }
+        if (null != lastModified && !lastModified.isEmpty()) { requestBuilder.header("If-Modified-Since", lastModified); }
+        return requestBuilder.build();
+    }
+
+
+    public static String getBaseUrl() {
+        return new StringBuilder().append(PropertyManager.INSTANCE.getString(Constants.PROPERTY_KEY_DISCO_URL))
+                                  .append(":")
+                                  .append(PropertyManager.INSTANCE.getString(Constants.PROPERTY_KEY_DISCO_PORT))
+                                  .toString();
+    }
+
+    public static String getBundlesUrl(final BundleQuery query) {
+        StringBuilder queryBuilder = new StringBuilder();
+        if (null != query.getDistribution() && query.getDistribution().getApiString().length() > 0) {
+            appendParameter(queryBuilder, Constants.API_DISTRIBUTION, query.getDistribution().getApiString());
+        }
+        if (null != query.getVersionNumber()) {
+            appendParameter(queryBuilder, Constants.API_VERSION, query.getVersionNumber().toString());
+        }
+        if (null != query.getLatest() && query.getLatest().getApiString().length() > 0) {
+            appendParameter(queryBuilder, Constants.API_LATEST, query.getLatest().getApiString());
+        }
+        if (null != query.getOperatingSystem() && query.getOperatingSystem().getApiString().length() > 0) {
+            appendParameter(queryBuilder, Constants.API_OPERATING_SYSTEM, query.getOperatingSystem().getApiString());
+        }
+        if (null != query.getArchitecture() && query.getArchitecture().getApiString().length() > 0) {
+            appendParameter(queryBuilder, Constants.API_ARCHITECTURE, query.getArchitecture().getApiString());
+        }
+        if (null != query.getBitness() && query.getBitness().getApiString().length() > 0) {
+            appendParameter(queryBuilder, Constants.API_BITNESS, query.getBitness().getApiString());
+        }
+        if (null != query.getExtension() && query.getExtension().getApiString().length() > 0) {
+            appendParameter(queryBuilder, Constants.API_EXTENSION, query.getExtension().getApiString());
+        }
+        if (null != query.getBundleType() && query.getBundleType().getApiString().length() > 0) {
+            appendParameter(queryBuilder, Constants.API_BUNDLE_TYPE, query.getBundleType().getApiString());
+        }
+        if (null != query.getFx() && query.getFx()) {
+            appendParameter(queryBuilder, Constants.API_FX, query.getFx().toString());
+        }
+        if (null != query.getReleaseStatus() && query.getReleaseStatus().getApiString().length() > 0) {
+            appendParameter(queryBuilder, Constants.API_RELEASE_STATUS, query.getReleaseStatus().getApiString());
+        }
+        if (null != query.getSupportTerm() && query.getSupportTerm().getApiString().length() > 0) {
+            appendParameter(queryBuilder, Constants.API_SUPPORT_TERM, query.getSupportTerm().getApiString());
+        }
+        return getBaseUrl() + Constants.BUNDLES_PATH + queryBuilder.toString();
+    }
+
+    public static String getBundleFileInfoUrl(final long bundleId, final boolean scdl) {
+        return getBaseUrl() + Constants.BUNDLES_PATH + "/" + (scdl ? "dl/" : "") + bundleId;
+    }
+
+    public static String getReleaseUrl(final String release) {
+        return getBaseUrl() + Constants.RELEASES_PATH + "/" + release;
+    }
+
+    public static List<Bundle> parseBundles(final String json) {
+        final BundleStore store = new BundleStore();
+        if (null == json || json.isEmpty()) { return BundleList.of(store); }
+        try {
+            new BundleJsonParser(store).parse(new StringReader(json), null);
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            LOGGER.debug("Error parsing bundles : {}", e.getMessage());
+        }
+        return BundleList.of(store);
+    }
+
+    public static BundleFileInfo parseBundleFileInfo(final String json, final VersionNumber versionNumber) {
+        if (null == json || json.isEmpty()) { return null; }
+        try {
+            final JsonElement element = new Gson().fromJson(json, JsonElement.class);
+            if (null == element || !element.isJsonObject()) { return null; }
+            final JsonObject object = element.getAsJsonObject();
+            return new BundleFileInfo(object.has(Constants.ID) ? object.get(Constants.ID).getAsLong() : -1,
+                                      object.has(Constants.FILENAME) ? object.get(Constants.FILENAME).getAsString() : "",
+                                      object.has(Constants.DOWNLOAD_LINK) ? object.get(Constants.DOWNLOAD_LINK).getAsString() : "",
+                                      versionNumber);
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            LOGGER.debug("Error parsing bundle file info : {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public static Release parseRelease(final String json) {
+        if (null == json || json.isEmpty()) { return null; }
+        JsonElement element = new Gson().fromJson(json, JsonElement.class);
+        if (element.isJsonObject()) {
+            return new Release(element.getAsJsonObject().toString());
+        } else if (element.isJsonArray() && element.getAsJsonArray().size() > 0) {
+            return new Release(element.getAsJsonArray().get(0).getAsJsonObject().toString());
+        }
+        return null;
+    }
+
+    private static void appendParameter(final StringBuilder queryBuilder, final String key, final String value) {
+        queryBuilder.append(queryBuilder.length() == 0 ? "?" : "&").append(key).append("=").append(value);
+    }
+
+
+    // ******************** Inner classes *************************************
+    private static class MeteredInputStream extends FilterInputStream {
+        private final Metrics.Sample sample;
+        private final boolean        failed;
+        private       long           bytes;
+
+        MeteredInputStream(final InputStream inputStream, final Metrics.Sample sample, final boolean failed) {
+            super(inputStream);
+            this.sample = sample;
+            this.failed = failed;
+        }
+
+        @Override public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) { bytes++; }
+            return b;
+        }
+
+        @Override public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) { bytes += read; }
+            return read;
+        }
+
+        @Override public void close() throws IOException {
+            sample.stop(bytes, failed);
+            super.close();
+        }
+    }
+
+    public static class ApiResponse<T> {
+        private final int    statusCode;
+        private final T      body;
+        private final String eTag;
+        private final String lastModified;
+
+        public ApiResponse(final int statusCode, final T body, final String eTag, final String lastModified) {
+            this.statusCode   = statusCode;
+            this.body         = body;
+            this.eTag         = eTag;
+            this.lastModified = lastModified;
+        }
+
+        public int getStatusCode() { return statusCode; }
+
+        public T getBody() { return body; }
+
+        public String getETag() { return eTag; }
+
+        public String getLastModified() { return lastModified; }
+    }
+}
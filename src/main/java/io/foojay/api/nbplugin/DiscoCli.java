@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.foojay.api.discoclient.DiscoClient;
+import io.foojay.api.discoclient.bundle.Architecture;
+import io.foojay.api.discoclient.bundle.Bitness;
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.BundleType;
+import io.foojay.api.discoclient.bundle.Distribution;
+import io.foojay.api.discoclient.bundle.Extension;
+import io.foojay.api.discoclient.bundle.Latest;
+import io.foojay.api.discoclient.bundle.OperatingSystem;
+import io.foojay.api.discoclient.bundle.ReleaseStatus;
+import io.foojay.api.discoclient.bundle.SupportTerm;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.event.DCEventType;
+import io.foojay.api.nbplugin.DownloadManager.Download;
+import io.foojay.api.nbplugin.DownloadManager.Priority;
+import io.foojay.api.nbplugin.DownloadManager.State;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+
+// Command line access without Swing, nothing in here touches AWT so the tool starts fast and runs in CI images.
+//   list     [filters] [--json]                                prints the matching bundles
+//   download [filters] [--all] [--dir dir] [--install [--keep]]   downloads the first (or every) matching bundle
+//   batch    manifest [--dir dir] [--install [--keep]]            downloads the first match of every line of the manifest at the same time
+// With --install the archives are unpacked into dir while they are downloaded and only kept with --keep.
+// The filters are the ones of Main: --distro, --version, --os, --arch, --bitness, --ext, --type, --fx, --status,
+// --term and --latest. A manifest line holds the filters of one bundle, lines starting with # are comments.
+public class DiscoCli {
+    public  static final int              EXIT_OK       = 0;
+    public  static final int              EXIT_FAILED   = 1;
+    public  static final int              EXIT_USAGE    = 2;
+    private static final String[]         FLAGS         = { "--json", "--all", "--fx", "--install", "--keep" };
+    private static final String           TABLE_FORMAT  = "%-12s %-14s %-12s %-8s %-8s %-4s %-8s %s%n";
+    private static final int              PROGRESS_STEP = 10;
+    private final        DiscoClient      discoClient;
+    private final        AsyncDiscoClient asyncDiscoClient;
+    private final        PrintStream      out;
+    private final        PrintStream      err;
+
+
+    public DiscoCli(final PrintStream out, final PrintStream err) {
+        this.discoClient      = new DiscoClient();
+        this.asyncDiscoClient = new AsyncDiscoClient(discoClient, HttpClientFactory.getSharedClient(), false);
+        this.out              = out;
+        this.err              = err;
+    }
+
+
+    public int run(final String[] args) {
+        if (args.length == 0) { return usage("Missing command"); }
+        try {
+            final String              command = args[0];
+            final List<String>        rest    = Arrays.asList(args).subList(1, args.length);
+            final Map<String, String> options;
+            switch(command) {
+                case "list":
+                    options = parseOptions(rest);
+                    return list(toQuery(options), options.containsKey("--json"));
+                case "download":
+                    options = parseOptions(rest);
+                    return download(toQuery(options), options.containsKey("--all"), getDir(options), options.containsKey("--install"), options.containsKey("--keep"));
+                case "batch":
+                    if (rest.isEmpty()) { return usage("Missing manifest"); }
+                    options = parseOptions(rest.subList(1, rest.size()));
+                    return batch(Paths.get(rest.get(0)), getDir(options), options.containsKey("--install"), options.containsKey("--keep"));
+                default:
+                    return usage("Unknown command " + command);
+            }
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage());
+        } finally {
+            asyncDiscoClient.shutdown();
+        }
+    }
+
+    private int list(final BundleQuery query, final boolean json) {
+        final List<Bundle> bundles = asyncDiscoClient.getBundles(query).join();
+        if (json) {
+            final JsonArray array = new JsonArray();
+            bundles.forEach(bundle -> array.add(toJson(bundle)));
+            out.println(new GsonBuilder().setPrettyPrinting().create().toJson(array));
+        } else {
+            out.printf(TABLE_FORMAT, "Version", "Distribution", "OS", "Arch", "Type", "Ext", "Status", "File");
+            for (Bundle bundle : bundles) {
+                out.printf(TABLE_FORMAT, bundle.getVersionNumber(), bundle.getDistributionName(), bundle.getOperatingSystem().getApiString(),
+                           bundle.getArchitecture().getApiString(), bundle.getBundleType().getApiString(), bundle.getExtension().getApiString(),
+                           bundle.getReleaseStatus().getApiString(), bundle.getFileName());
+            }
+        }
+        return EXIT_OK;
+    }
+
+    private int download(final BundleQuery query, final boolean all, final Path dir, final boolean install, final boolean keep) {
+        final List<Bundle> bundles = asyncDiscoClient.getBundles(query).join();
+        if (bundles.isEmpty()) {
+            err.println("No bundle found");
+            return EXIT_FAILED;
+        }
+        return downloadAll(all ? bundles : bundles.subList(0, 1), dir, install, keep);
+    }
+
+    // All queries of the manifest run at the same time, the downloads then go through the queue of the DownloadManager
+    private int batch(final Path manifest, final Path dir, final boolean install, final boolean keep) {
+        final List<CompletableFuture<List<Bundle>>> queries = new ArrayList<>();
+        final List<String>                          lines   = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(manifest)) {
+                if (line.isBlank() || line.trim().startsWith("#")) { continue; }
+                lines.add(line.trim());
+                queries.add(asyncDiscoClient.getBundles(toQuery(parseOptions(Arrays.asList(line.trim().split("\\s+"))))));
+            }
+        } catch (IOException e) {
+            err.println("Error reading " + manifest + " : " + e.getMessage());
+            return EXIT_FAILED;
+        }
+        final List<Bundle> bundles = new ArrayList<>();
+        int                result  = EXIT_OK;
+        for (int i = 0 ; i < queries.size() ; i++) {
+            final List<Bundle> found = queries.get(i).join();
+            if (found.isEmpty()) {
+                err.println("No bundle found for " + lines.get(i));
+                result = EXIT_FAILED;
+            } else {
+                bundles.add(found.get(0));
+            }
+        }
+        return Math.max(result, downloadAll(bundles, dir, install, keep));
+    }
+
+    // Bundles that can't be unpacked (installers, packages) are downloaded as they are, even with install set
+    private int downloadAll(final List<Bundle> bundles, final Path dir, final boolean install, final boolean keep) {
+        final DownloadManager                downloadManager = new DownloadManager(asyncDiscoClient);
+        final Map<Download, Integer>         reported        = new ConcurrentHashMap<>();
+        final List<CompletableFuture<State>> done            = new ArrayList<>();
+        downloadManager.setOnDCEvent((download, event) -> {
+            // One line per download and PROGRESS_STEP percent, not per event
+            if (event.getType() != DCEventType.DOWNLOAD_PROGRESS) { return; }
+            final Integer percent = download.getPercent() / PROGRESS_STEP * PROGRESS_STEP;
+            if (!percent.equals(reported.put(download, percent))) { err.println(String.format("%3d%% %s", percent, download)); }
+        });
+        downloadManager.setOnStateChanged(download -> {
+            switch(download.getState()) {
+                case RUNNING : err.println("Downloading " + download); break;
+                case FINISHED: err.println("Finished    " + download + (null == download.getHome() ? "" : " -> " + download.getHome())); break;
+                case FAILED  : err.println("Failed      " + download); break;
+                default      : break;
+            }
+        });
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            err.println("Error creating " + dir + " : " + e.getMessage());
+            return EXIT_FAILED;
+        }
+        for (Bundle bundle : bundles) {
+            final Path     installDir = install && ArchiveExtractor.isSupported(bundle.getFileName()) ? dir : null;
+            final Download download   = downloadManager.enqueue(bundle.getId(), dir.resolve(bundle.getFileName()).toString(), bundle.getVersionNumber(), installDir,
+                                                                null == installDir || keep, Priority.NORMAL, null);
+            done.add(download.getDone());
+        }
+        int result = EXIT_OK;
+        for (CompletableFuture<State> state : done) {
+            if (state.join() != State.FINISHED) { result = EXIT_FAILED; }
+        }
+        return result;
+    }
+
+    private BundleQuery toQuery(final Map<String, String> options) {
+        final VersionNumber versionNumber = options.containsKey("--version") ? VersionNumber.fromText(options.get("--version")) : null;
+        return new BundleQuery(parse(options, "--distro", Distribution.NONE, Distribution.NOT_FOUND, Distribution::fromText),
+                               versionNumber,
+                               parse(options, "--latest", null == versionNumber ? Latest.NONE : Latest.OVERALL, Latest.NOT_FOUND, Latest::fromText),
+                               parse(options, "--os", discoClient.getOperatingSystem(), OperatingSystem.NOT_FOUND, OperatingSystem::fromText),
+                               parse(options, "--arch", Architecture.NONE, Architecture.NOT_FOUND, Architecture::fromText),
+                               parse(options, "--bitness", Bitness.NONE, Bitness.NOT_FOUND, Bitness::fromText),
+                               parse(options, "--ext", Extension.NONE, Extension.NOT_FOUND, Extension::fromText),
+                               parse(options, "--type", BundleType.JDK, BundleType.NOT_FOUND, BundleType::fromText),
+                               options.containsKey("--fx"),
+                               parse(options, "--status", ReleaseStatus.NONE, ReleaseStatus.NOT_FOUND, ReleaseStatus::fromText),
+                               parse(options, "--term", SupportTerm.NONE, SupportTerm.NOT_FOUND, SupportTerm::fromText));
+    }
+
+    private int usage(final String message) {
+        err.println(message);
+        err.println("Usage: list     [filters] [--json]");
+        err.println("       download [filters] [--all] [--dir <dir>] [--install [--keep]]");
+        err.println("       batch    <manifest> [--dir <dir>] [--install [--keep]]");
+        err.println("Filters: --distro --version --os --arch --bitness --ext --type --fx --status --term --latest");
+        return EXIT_USAGE;
+    }
+
+    private static Map<String, String> parseOptions(final List<String> args) {
+        final Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0 ; i < args.size() ; i++) {
+            final String arg = args.get(i);
+            if (!arg.startsWith("--")) { throw new IllegalArgumentException("Unexpected argument " + arg); }
+            if (Arrays.asList(FLAGS).contains(arg)) {
+                options.put(arg, "true");
+            } else {
+                if (i + 1 >= args.size()) { throw new IllegalArgumentException("Missing value of " + arg); }
+                options.put(arg, args.get(++i));
+            }
+        }
+        return options;
+    }
+
+    private static <T> T parse(final Map<String, String> options, final String key, final T defaultValue, final T notFound, final Function<String, T> fromText) {
+        if (!options.containsKey(key)) { return defaultValue; }
+        final T value = fromText.apply(options.get(key));
+        if (null == value || value == notFound) { throw new IllegalArgumentException("Unknown value of " + key + " : " + options.get(key)); }
+        return value;
+    }
+
+    private static Path getDir(final Map<String, String> options) { return Paths.get(options.getOrDefault("--dir", ".")); }
+
+    private static JsonObject toJson(final Bundle bundle) {
+        final JsonObject json = new JsonObject();
+        json.addProperty("id", bundle.getId());
+        json.addProperty("distribution", bundle.getDistributionName());
+        json.addProperty("version", bundle.getVersionNumber().toString());
+        json.addProperty("operating_system", bundle.getOperatingSystem().getApiString());
+        json.addProperty("architecture", bundle.getArchitecture().getApiString());
+        json.addProperty("bitness", bundle.getBitness().getApiString());
+        json.addProperty("bundle_type", bundle.getBundleType().getApiString());
+        json.addProperty("extension", bundle.getExtension().getApiString());
+        json.addProperty("release_status", bundle.getReleaseStatus().getApiString());
+        json.addProperty("support_term", bundle.getSupportTerm().getApiString());
+        json.addProperty("fx", bundle.getFX());
+        json.addProperty("filename", bundle.getFileName());
+        return json;
+    }
+
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(new DiscoCli(System.out, System.err).run(args));
+    }
+}
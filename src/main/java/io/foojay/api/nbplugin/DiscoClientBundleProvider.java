@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.Release;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.util.BundleFileInfo;
+
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+
+public class DiscoClientBundleProvider implements BundleProvider {
+    private final DiscoApi discoApi;
+
+
+    public DiscoClientBundleProvider() {
+        this(new DiscoApi());
+    }
+    public DiscoClientBundleProvider(final DiscoApi discoApi) {
+        this.discoApi = discoApi;
+    }
+
+
+    // Bundles are streamed into a column store instead of going through DiscoClient.getBundles(), which builds
+    // a json tree and parses every bundle a second time
+    @Override public List<Bundle> getBundles(final BundleQuery query) {
+        return discoApi.getBundles(query, null);
+    }
+
+    @Override public List<Bundle> getBundles(final BundleQuery query, final ObjIntConsumer<BundleStore> consumer) {
+        return discoApi.getBundles(query, consumer);
+    }
+
+    // The discoclient creates a new HttpClient (and connection) per call, DiscoApi uses the shared one
+    @Override public BundleFileInfo getBundleFileInfo(final long bundleId, final VersionNumber versionNumber) {
+        return discoApi.getBundleFileInfo(bundleId, versionNumber, false);
+    }
+
+    @Override public BundleFileInfo getBundleFileInfoSCDL(final long bundleId, final VersionNumber versionNumber) {
+        return discoApi.getBundleFileInfo(bundleId, versionNumber, true);
+    }
+
+    @Override public Release getRelease(final String release) {
+        return discoApi.getRelease(release);
+    }
+}
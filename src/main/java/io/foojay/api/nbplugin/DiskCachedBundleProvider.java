@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.Release;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.util.BundleFileInfo;
+import io.foojay.api.nbplugin.DiscoApi.ApiResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+
+// Serves bundle and release queries from the on disk cache, expired entries are revalidated with conditional requests
+public class DiskCachedBundleProvider implements BundleProvider {
+    private static final Logger         LOGGER = LoggerFactory.getLogger(DiskCachedBundleProvider.class);
+    private final        BundleProvider delegate;
+    private final        DiscoApi       discoApi;
+    private final        BundleCache    cache;
+    private final        long           ttl;
+    private final        CacheStats     stats;
+
+
+    public DiskCachedBundleProvider(final BundleProvider delegate) {
+        this(delegate, new DiscoApi());
+    }
+    public DiskCachedBundleProvider(final BundleProvider delegate, final DiscoApi discoApi) {
+        this(delegate, discoApi, new BundleCache(PluginPropertyManager.INSTANCE.getConfigDir().resolve("cache")),
+             TimeUnit.SECONDS.toMillis(PluginPropertyManager.INSTANCE.getLong(PluginPropertyManager.PROPERTY_KEY_CACHE_TTL)));
+    }
+    public DiskCachedBundleProvider(final BundleProvider delegate, final DiscoApi discoApi, final BundleCache cache, final long ttl) {
+        this.delegate = delegate;
+        this.discoApi = discoApi;
+        this.cache    = cache;
+        this.ttl      = ttl;
+        this.stats    = Metrics.INSTANCE.getCache("diskCache");
+    }
+
+
+    public CacheStats getStats() { return stats; }
+
+    @Override public List<Bundle> getBundles(final BundleQuery query) {
+        return getBundles(query, null);
+    }
+
+    // Only the first parse streams its rows. Once that failed, e.g. on a broken cache entry or connection, the next
+    // attempt would send the same rows again, the returned list replaces the streamed rows then.
+    @Override public List<Bundle> getBundles(final BundleQuery query, final ObjIntConsumer<BundleStore> consumer) {
+        final AtomicBoolean streaming = new AtomicBoolean(null != consumer);
+        return fetch(DiscoApi.getBundlesUrl(query), inputStream -> BundleJsonParser.parse(inputStream, streaming.getAndSet(false) ? consumer : null),
+                     () -> BundleList.of(new BundleStore()));
+    }
+
+    // Download links are resolved at download time, so file infos are not persisted
+    @Override public BundleFileInfo getBundleFileInfo(final long bundleId, final VersionNumber versionNumber) {
+        return delegate.getBundleFileInfo(bundleId, versionNumber);
+    }
+
+    @Override public BundleFileInfo getBundleFileInfoSCDL(final long bundleId, final VersionNumber versionNumber) {
+        return delegate.getBundleFileInfoSCDL(bundleId, versionNumber);
+    }
+
+    @Override public Release getRelease(final String release) {
+        return fetch(DiscoApi.getReleaseUrl(release), inputStream -> DiscoApi.parseRelease(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)), () -> null);
+    }
+
+    private <T> T fetch(final String url, final BodyParser<T> parser, final Supplier<T> empty) {
+        return fetch(url, parser, empty, true);
+    }
+    private <T> T fetch(final String url, final BodyParser<T> parser, final Supplier<T> empty, final boolean useCache) {
+        BundleCache.Entry entry = useCache ? cache.get(url) : null;
+        if (null != entry && !entry.isExpired(ttl)) {
+            try {
+                final T result = parse(entry, parser);
+                stats.recordHit();
+                return result;
+            } catch (IOException e) {
+                LOGGER.debug("Error reading cache entry for {} : {}", url, e.getMessage());
+                entry = null;
+            }
+        }
+
+        try {
+            ApiResponse<InputStream> response = null == entry ? discoApi.getStream(url, null, null) : discoApi.getStream(url, entry.getETag(), entry.getLastModified());
+            try (InputStream body = response.getBody()) {
+                if (response.getStatusCode() == DiscoApi.HTTP_NOT_MODIFIED && null != entry) {
+                    final T result;
+                    try {
+                        result = parse(entry, parser);
+                    } catch (IOException e) {
+                        // Without the broken entry the server has to send the whole body
+                        LOGGER.debug("Error reading cache entry for {} : {}", url, e.getMessage());
+                        return fetch(url, parser, empty, false);
+                    }
+                    stats.recordRevalidation();
+                    cache.touch(entry);
+                    return result;
+                } else if (response.getStatusCode() == DiscoApi.HTTP_OK) {
+                    final T result = parseAndCache(url, body, response, parser);
+                    stats.recordMiss();
+                    return result;
+                }
+            }
+            LOGGER.debug("Response ({}) {}", response.getStatusCode(), url);
+        } catch (InterruptedException | InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+            return empty.get();
+        } catch (IOException e) {
+            LOGGER.debug("Error fetching {} : {}", url, e.getMessage());
+        }
+
+        // Server not reachable, better show outdated data than nothing
+        if (null != entry) {
+            try {
+                final T result = parse(entry, parser);
+                stats.recordStaleHit();
+                return result;
+            } catch (IOException e) {
+                LOGGER.debug("Error reading cache entry for {} : {}", url, e.getMessage());
+            }
+        }
+        stats.recordMiss();
+        return empty.get();
+    }
+
+    // An entry that can't be parsed would fail on every request until it expires, so it is dropped
+    private <T> T parse(final BundleCache.Entry entry, final BodyParser<T> parser) throws IOException {
+        try (InputStream inputStream = entry.openBody()) {
+            return parse(inputStream, parser);
+        } catch (IOException e) {
+            cache.remove(entry);
+            throw e;
+        }
+    }
+
+    // The json parsers throw runtime exceptions on unexpected content, that is handled like a broken stream
+    private static <T> T parse(final InputStream inputStream, final BodyParser<T> parser) throws IOException {
+        try {
+            return parser.parse(inputStream);
+        } catch (RuntimeException e) {
+            throw new IOException("Unexpected content: " + e.getMessage(), e);
+        }
+    }
+
+    // The response is parsed while it is copied to a temp file, which replaces the cache entry once it is complete
+    private <T> T parseAndCache(final String url, final InputStream body, final ApiResponse<?> response, final BodyParser<T> parser) throws IOException {
+        final Path tempFile = cache.createTempFile(url);
+        try {
+            final T result;
+            try (CachingInputStream inputStream = new CachingInputStream(body, Files.newOutputStream(tempFile))) {
+                result = parse(inputStream, parser);
+                inputStream.drain();
+            }
+            cache.put(url, tempFile, response.getETag(), response.getLastModified());
+            return result;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+
+    // ******************** Inner classes *************************************
+    @FunctionalInterface private interface BodyParser<T> {
+        T parse(InputStream inputStream) throws IOException;
+    }
+
+    private static class CachingInputStream extends FilterInputStream {
+        private final OutputStream outputStream;
+
+        CachingInputStream(final InputStream inputStream, final OutputStream outputStream) {
+            super(inputStream);
+            this.outputStream = outputStream;
+        }
+
+        @Override public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) { outputStream.write(b); }
+            return b;
+        }
+
+        @Override public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int count = super.read(buffer, offset, length);
+            if (count > 0) { outputStream.write(buffer, offset, count); }
+            return count;
+        }
+
+        @Override public long skip(final long n) throws IOException {
+            final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            final int    count  = read(buffer, 0, buffer.length);
+            return Math.max(count, 0);
+        }
+
+        @Override public boolean markSupported() { return false; }
+
+        // Copies whatever the parser didn't read, so the cached body is complete
+        public void drain() throws IOException {
+            final byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) >= 0) { }
+        }
+
+        @Override public void close() throws IOException {
+            try {
+                outputStream.close();
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+// Sidecar file next to a download that records how far every byte range got, so that a failed download or an
+// app restart continues with range requests instead of starting at byte zero again
+public class DownloadJournal {
+    private static final Logger          LOGGER             = LoggerFactory.getLogger(DownloadJournal.class);
+    public  static final String          SUFFIX             = ".download";
+    private static final long            SAVE_INTERVAL      = 1_000;
+    private static final String          KEY_ID             = "id";
+    private static final String          KEY_VERSION        = "version";
+    private static final String          KEY_FILE_SIZE      = "fileSize";
+    private static final String          KEY_ETAG           = "etag";
+    private static final String          KEY_LAST_MODIFIED  = "lastModified";
+    private static final String          KEY_RANGES         = "ranges";
+    private final        Path            journalFile;
+    private final        long            bundleId;
+    private final        String          versionNumber;
+    private final        long            fileSize;
+    private final        String          eTag;
+    private final        String          lastModified;
+    private final        long[]          starts;
+    private final        long[]          ends;
+    private final        AtomicLongArray written;
+    private              long            lastSaved;
+
+
+    public DownloadJournal(final Path target, final long bundleId, final VersionNumber versionNumber, final long fileSize,
+                           final String eTag, final String lastModified, final int ranges) {
+        this(getJournalFile(target), bundleId, null == versionNumber ? "" : versionNumber.toString(), fileSize, eTag, lastModified, new long[ranges], new long[ranges], new long[ranges]);
+        final long rangeSize = (fileSize + ranges - 1) / ranges;
+        for (int i = 0 ; i < ranges ; i++) {
+            starts[i] = i * rangeSize;
+            ends[i]   = Math.min(fileSize, starts[i] + rangeSize) - 1;
+        }
+    }
+    private DownloadJournal(final Path journalFile, final long bundleId, final String versionNumber, final long fileSize,
+                            final String eTag, final String lastModified, final long[] starts, final long[] ends, final long[] written) {
+        this.journalFile   = journalFile;
+        this.bundleId      = bundleId;
+        this.versionNumber = versionNumber;
+        this.fileSize      = fileSize;
+        this.eTag          = null == eTag ? "" : eTag;
+        this.lastModified  = null == lastModified ? "" : lastModified;
+        this.starts        = starts;
+        this.ends          = ends;
+        this.written       = new AtomicLongArray(written);
+    }
+
+
+    public long getFileSize() { return fileSize; }
+
+    public int getRangeCount() { return starts.length; }
+
+    public long getStart(final int range) { return starts[range]; }
+
+    public long getEnd(final int range) { return ends[range]; }
+
+    // Next byte of the range that is not on disk yet
+    public long getPosition(final int range) { return starts[range] + written.get(range); }
+
+    public boolean isComplete(final int range) { return getPosition(range) > ends[range]; }
+
+    // Number of bytes from the start of the file that are on disk without a gap
+    public long getContiguousBytes() {
+        for (int i = 0 ; i < starts.length ; i++) {
+            if (!isComplete(i)) { return getPosition(i); }
+        }
+        return fileSize;
+    }
+
+    public long getBytesDone() {
+        long bytesDone = 0;
+        for (int i = 0 ; i < starts.length ; i++) { bytesDone += written.get(i); }
+        return bytesDone;
+    }
+
+    public void advance(final int range, final int bytes) { written.addAndGet(range, bytes); }
+
+    // A journal only fits if the server still has the same file, otherwise the partial file is worthless
+    public boolean matches(final long fileSize, final String eTag, final String lastModified) {
+        if (this.fileSize != fileSize) { return false; }
+        if (!this.eTag.isEmpty() && null != eTag && !eTag.isEmpty()) { return this.eTag.equals(eTag); }
+        return this.lastModified.isEmpty() || null == lastModified || lastModified.isEmpty() || this.lastModified.equals(lastModified);
+    }
+
+    public synchronized boolean isSaveDue() { return System.currentTimeMillis() - lastSaved >= SAVE_INTERVAL; }
+
+    public synchronized void save() {
+        final StringBuilder ranges = new StringBuilder();
+        for (int i = 0 ; i < starts.length ; i++) {
+            if (i > 0) { ranges.append(","); }
+            ranges.append(starts[i]).append("-").append(ends[i]).append(":").append(written.get(i));
+        }
+        final Properties journal = new Properties();
+        journal.setProperty(KEY_ID, Long.toString(bundleId));
+        journal.setProperty(KEY_VERSION, versionNumber);
+        journal.setProperty(KEY_FILE_SIZE, Long.toString(fileSize));
+        journal.setProperty(KEY_ETAG, eTag);
+        journal.setProperty(KEY_LAST_MODIFIED, lastModified);
+        journal.setProperty(KEY_RANGES, ranges.toString());
+        try {
+            final Path tmpFile = Files.createTempFile(journalFile.toAbsolutePath().getParent(), journalFile.getFileName().toString(), ".tmp");
+            try (OutputStream outputStream = Files.newOutputStream(tmpFile)) {
+                journal.store(outputStream, null);
+            }
+            Files.move(tmpFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.debug("Error writing download journal {} : {}", journalFile, e.getMessage());
+        }
+        lastSaved = System.currentTimeMillis();
+    }
+
+    public void delete() {
+        try {
+            Files.deleteIfExists(journalFile);
+        } catch (IOException e) {
+            LOGGER.debug("Error deleting download journal {} : {}", journalFile, e.getMessage());
+        }
+    }
+
+
+    public static Path getJournalFile(final Path target) { return target.resolveSibling(target.getFileName() + SUFFIX); }
+
+    // Returns null if there is no journal for this bundle next to the target or the partial file is gone
+    public static DownloadJournal load(final Path target, final long bundleId, final VersionNumber versionNumber) {
+        final Path journalFile = getJournalFile(target);
+        if (!Files.exists(journalFile) || !Files.exists(target)) { return null; }
+        try {
+            final Properties journal = new Properties();
+            try (InputStream inputStream = Files.newInputStream(journalFile)) {
+                journal.load(inputStream);
+            }
+            if (bundleId != Long.parseLong(journal.getProperty(KEY_ID, "-1")) || !versionNumber.toString().equals(journal.getProperty(KEY_VERSION))) { return null; }
+
+            final String[] ranges  = journal.getProperty(KEY_RANGES, "").split(",");
+            final long[]   starts  = new long[ranges.length];
+            final long[]   ends    = new long[ranges.length];
+            final long[]   written = new long[ranges.length];
+            for (int i = 0 ; i < ranges.length ; i++) {
+                final int dash  = ranges[i].indexOf('-');
+                final int colon = ranges[i].indexOf(':');
+                starts[i]  = Long.parseLong(ranges[i].substring(0, dash));
+                ends[i]    = Long.parseLong(ranges[i].substring(dash + 1, colon));
+                written[i] = Long.parseLong(ranges[i].substring(colon + 1));
+            }
+            return new DownloadJournal(journalFile, bundleId, versionNumber.toString(), Long.parseLong(journal.getProperty(KEY_FILE_SIZE, "-1")),
+                                       journal.getProperty(KEY_ETAG, ""), journal.getProperty(KEY_LAST_MODIFIED, ""), starts, ends, written);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Error reading download journal {} : {}", journalFile, e.getMessage());
+            return null;
+        }
+    }
+}
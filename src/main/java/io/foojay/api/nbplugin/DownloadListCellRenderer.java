@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.nbplugin.DownloadManager.Download;
+
+import javax.swing.*;
+import java.awt.*;
+
+
+public class DownloadListCellRenderer extends DefaultListCellRenderer {
+
+    public Component getListCellRendererComponent(JList list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+        if (value instanceof Download) {
+            final Download download = (Download) value;
+            switch(download.getState()) {
+                case QUEUED : value = download + " (queued)"; break;
+                case RUNNING: value = download + " (" + download.getPercent() + "%)"; break;
+                default     : value = download + " (" + download.getState().name().toLowerCase() + ")"; break;
+            }
+        }
+        super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+        return this;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.event.DCEvent;
+import io.foojay.api.discoclient.event.DCEventConsumer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+
+// Queue for bundle downloads, at most maxConcurrent of them run at the same time and queued ones start by priority
+public class DownloadManager {
+    public enum Priority { HIGH, NORMAL, LOW }
+
+    public enum State { QUEUED, RUNNING, FINISHED, FAILED, CANCELLED }
+
+    private static final Comparator<Download>                ORDER = Comparator.comparing(Download::getPriority).thenComparingLong(download -> download.sequence);
+    private final        AsyncDiscoClient                    asyncDiscoClient;
+    private final        int                                 maxConcurrent;
+    private final        PriorityQueue<Download>             queue;
+    private final        List<Download>                      running;
+    private final        List<Consumer<Download>>            stateListeners;
+    private final        List<BiConsumer<Download, DCEvent>> eventListeners;
+    private              long                                sequence;
+
+
+    public DownloadManager(final AsyncDiscoClient asyncDiscoClient) {
+        this(asyncDiscoClient, PluginPropertyManager.INSTANCE.getInt(PluginPropertyManager.PROPERTY_KEY_DOWNLOAD_MAX_CONCURRENT));
+    }
+    public DownloadManager(final AsyncDiscoClient asyncDiscoClient, final int maxConcurrent) {
+        this.asyncDiscoClient = asyncDiscoClient;
+        this.maxConcurrent    = Math.max(1, maxConcurrent);
+        this.queue            = new PriorityQueue<>(ORDER);
+        this.running          = new ArrayList<>();
+        this.stateListeners   = new CopyOnWriteArrayList<>();
+        this.eventListeners   = new CopyOnWriteArrayList<>();
+    }
+
+
+    public int getMaxConcurrent() { return maxConcurrent; }
+
+    // The same bundle to the same target is not downloaded twice, the consumer is added to the existing download.
+    // Another target of a bundle waits until the running download is done, it can then be taken from the store.
+    public Download enqueue(final long bundleId, final String fileName, final VersionNumber versionNumber, final Priority priority, final DCEventConsumer consumer) {
+        return enqueue(bundleId, fileName, versionNumber, null, false, priority, consumer);
+    }
+    // With an installDir the bundle is unpacked there while it is downloaded, the archive is only kept if keepArchive is set
+    public Download enqueue(final long bundleId, final String fileName, final VersionNumber versionNumber, final Path installDir, final boolean keepArchive,
+                            final Priority priority, final DCEventConsumer consumer) {
+        final Download download;
+        synchronized (this) {
+            final Download existing = find(bundleId, fileName, installDir, keepArchive);
+            if (null != existing) {
+                if (null != consumer) { existing.setOnDCEvent(consumer); }
+                // A queued download moves up if it is requested again with a higher priority
+                if (null != priority && priority.compareTo(existing.priority) < 0 && queue.remove(existing)) {
+                    existing.priority = priority;
+                    queue.add(existing);
+                }
+                return existing;
+            }
+            download = new Download(bundleId, fileName, versionNumber, installDir, keepArchive, null == priority ? Priority.NORMAL : priority, sequence++, eventListeners);
+            if (null != consumer) { download.setOnDCEvent(consumer); }
+            queue.add(download);
+        }
+        fireStateChanged(download);
+        startNext();
+        return download;
+    }
+
+    // Returns a queued or running download of the bundle that has not been cancelled or null if there is none
+    public synchronized Download getDownload(final long bundleId) { return find(bundleId); }
+
+    // Running downloads first, then the queued ones in the order they will start
+    public synchronized List<Download> getDownloads() {
+        final List<Download> downloads = new ArrayList<>(running);
+        final List<Download> queued    = new ArrayList<>(queue);
+        queued.sort(ORDER);
+        downloads.addAll(queued);
+        return downloads;
+    }
+
+    public boolean cancel(final long bundleId) {
+        final Download download;
+        synchronized (this) { download = find(bundleId); }
+        return null != download && cancel(download);
+    }
+    public boolean cancel(final Download download) {
+        final boolean wasQueued;
+        synchronized (this) {
+            if (download.state == State.CANCELLED || (!queue.contains(download) && !running.contains(download))) { return false; }
+            wasQueued = queue.remove(download);
+            download.state = State.CANCELLED;
+        }
+        if (wasQueued) {
+            download.done.complete(State.CANCELLED);
+            fireStateChanged(download);
+        } else {
+            // The download is finished through the completion of its future
+            download.cancelFuture();
+        }
+        return true;
+    }
+
+    public void cancelAll() { getDownloads().forEach(this::cancel); }
+
+    public void setOnStateChanged(final Consumer<Download> listener) { stateListeners.add(listener); }
+    public void removeOnStateChanged(final Consumer<Download> listener) { stateListeners.remove(listener); }
+
+    // Gets the events of all downloads together with the download they belong to
+    public void setOnDCEvent(final BiConsumer<Download, DCEvent> listener) { eventListeners.add(listener); }
+    public void removeOnDCEvent(final BiConsumer<Download, DCEvent> listener) { eventListeners.remove(listener); }
+
+    // Cancelled downloads stay in running until their worker has returned, but they are not found any more
+    private Download find(final long bundleId) {
+        for (Download download : running) {
+            if (download.getBundleId() == bundleId && download.state != State.CANCELLED) { return download; }
+        }
+        for (Download download : queue) {
+            if (download.getBundleId() == bundleId) { return download; }
+        }
+        return null;
+    }
+    private Download find(final long bundleId, final String fileName, final Path installDir, final boolean keepArchive) {
+        for (Download download : running) {
+            if (download.state != State.CANCELLED && download.isSameAs(bundleId, fileName, installDir, keepArchive)) { return download; }
+        }
+        for (Download download : queue) {
+            if (download.isSameAs(bundleId, fileName, installDir, keepArchive)) { return download; }
+        }
+        return null;
+    }
+
+    // A queued download waits while its bundle or its target file is used by a running one
+    private boolean isBlocked(final Download download) {
+        for (Download other : running) {
+            if (other.getBundleId() == download.getBundleId() || other.fileName.equals(download.fileName)) { return true; }
+        }
+        return false;
+    }
+
+    private void startNext() {
+        final List<Download> started = new ArrayList<>();
+        synchronized (this) {
+            final List<Download> queued = new ArrayList<>(queue);
+            queued.sort(ORDER);
+            for (Download download : queued) {
+                if (running.size() >= maxConcurrent) { break; }
+                if (isBlocked(download)) { continue; }
+                queue.remove(download);
+                download.state = State.RUNNING;
+                running.add(download);
+                started.add(download);
+            }
+        }
+        for (Download download : started) {
+            fireStateChanged(download);
+            final AsyncDiscoClient.Task<?> future;
+            if (null == download.getInstallDir()) {
+                future = asyncDiscoClient.downloadBundle(download.getBundleId(), download.getFileName(), download.getVersionNumber(), download::fireDCEvent);
+            } else {
+                future = asyncDiscoClient.installBundle(download.getBundleId(), download.getFileName(), download.getVersionNumber(), download.getInstallDir(),
+                                                        download.isKeepArchive(), download::fireDCEvent);
+            }
+            download.setFuture(future);
+            future.whenComplete((result, throwable) -> {
+                if (result instanceof Path) { download.home = (Path) result; }
+            });
+            // A cancelled future completes at once, the slot and the target are only free once the worker has returned
+            future.getExit().thenRun(() -> finish(download, future.isCompletedExceptionally() ? State.FAILED : State.FINISHED));
+        }
+    }
+
+    private void finish(final Download download, final State state) {
+        synchronized (this) {
+            if (!running.remove(download)) { return; }
+            if (download.state != State.CANCELLED) { download.state = state; }
+        }
+        download.done.complete(download.state);
+        fireStateChanged(download);
+        startNext();
+    }
+
+    private void fireStateChanged(final Download download) { stateListeners.forEach(listener -> listener.accept(download)); }
+
+
+    // ******************** Inner classes *************************************
+    public static class Download {
+        private final    long                                bundleId;
+        private final    String                              fileName;
+        private final    VersionNumber                       versionNumber;
+        private final    Path                                installDir;
+        private final    boolean                             keepArchive;
+        private final    long                                sequence;
+        private final    List<DCEventConsumer>               consumers;
+        private final    List<BiConsumer<Download, DCEvent>> eventListeners;
+        private final    CompletableFuture<State>            done;
+        private volatile State                               state;
+        private volatile long                                fileSize;
+        private volatile long                                bytesRead;
+        private volatile Path                                home;
+        private volatile Priority                            priority;
+        private          CompletableFuture<?>                future;
+
+        Download(final long bundleId, final String fileName, final VersionNumber versionNumber, final Path installDir, final boolean keepArchive,
+                 final Priority priority, final long sequence, final List<BiConsumer<Download, DCEvent>> eventListeners) {
+            this.bundleId       = bundleId;
+            this.fileName       = fileName;
+            this.versionNumber  = versionNumber;
+            this.installDir     = installDir;
+            this.keepArchive    = keepArchive;
+            this.priority       = priority;
+            this.sequence       = sequence;
+            this.consumers      = new CopyOnWriteArrayList<>();
+            this.eventListeners = eventListeners;
+            this.done           = new CompletableFuture<>();
+            this.state          = State.QUEUED;
+        }
+
+        public long getBundleId() { return bundleId; }
+
+        public String getFileName() { return fileName; }
+
+        public VersionNumber getVersionNumber() { return versionNumber; }
+
+        // Null for a plain download
+        public Path getInstallDir() { return installDir; }
+
+        public boolean isKeepArchive() { return keepArchive; }
+
+        // The JDK home of an installed bundle once it is finished
+        public Path getHome() { return home; }
+
+        public Priority getPriority() { return priority; }
+
+        public State getState() { return state; }
+
+        public long getFileSize() { return fileSize; }
+
+        public long getBytesRead() { return bytesRead; }
+
+        public int getPercent() { return fileSize > 0 ? (int) (bytesRead * 100 / fileSize) : 0; }
+
+        // Completes with the final state once the download is finished, failed or cancelled
+        public CompletableFuture<State> getDone() { return done; }
+
+        public void setOnDCEvent(final DCEventConsumer consumer) { consumers.add(consumer); }
+        public void removeOnDCEvent(final DCEventConsumer consumer) { consumers.remove(consumer); }
+
+        private void fireDCEvent(final DCEvent event) {
+            switch(event.getType()) {
+                case DOWNLOAD_STARTED :
+                    fileSize = event.getFileSize();
+                    break;
+                case DOWNLOAD_PROGRESS:
+                    fileSize  = event.getFileSize();
+                    bytesRead = event.getFraction();
+                    break;
+                default:
+                    break;
+            }
+            consumers.forEach(consumer -> consumer.onDCEvent(event));
+            eventListeners.forEach(listener -> listener.accept(this, event));
+        }
+
+        private synchronized void setFuture(final CompletableFuture<?> future) {
+            this.future = future;
+            if (state == State.CANCELLED) { future.cancel(true); }
+        }
+
+        private synchronized void cancelFuture() {
+            if (null != future) { future.cancel(true); }
+        }
+
+        private boolean isSameAs(final long bundleId, final String fileName, final Path installDir, final boolean keepArchive) {
+            return this.bundleId == bundleId && this.fileName.equals(fileName) && Objects.equals(this.installDir, installDir) && this.keepArchive == keepArchive;
+        }
+
+        @Override public String toString() { return Paths.get(fileName).getFileName().toString(); }
+    }
+}
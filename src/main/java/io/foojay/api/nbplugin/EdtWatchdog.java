@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.foojay.api.nbplugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+// Opt-in (edt.watchdog) detector for a blocked EDT. Every event is timestamped when its dispatch starts, a daemon
+// thread takes the stack of the EDT once an event runs longer than the threshold, so the stack shows what blocks it
+// and not what finished in the end. The first frame of the plugin in that stack, e.g. Main.updateData, is the
+// offender. The worst offenders are logged on exit.
+public class EdtWatchdog extends EventQueue {
+    private static final Logger                 LOGGER       = LoggerFactory.getLogger(EdtWatchdog.class);
+    private static final String                 PACKAGE      = EdtWatchdog.class.getPackageName() + ".";
+    private static final int                    MAX_FRAMES   = 12;
+    private static final int                    SUMMARY_SIZE = 10;
+    private static       EdtWatchdog            instance;
+    private final        long                   thresholdNanos;
+    private final        Map<String, Offender>  offenders;
+    private volatile     Thread                 edt;
+    private volatile     AWTEvent               dispatching;
+    private volatile     long                   dispatchStart;
+    private volatile     long                   spentNanos;
+    private volatile     StackTraceElement[]    stalledStack;
+
+
+    private EdtWatchdog(final long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.offenders      = new ConcurrentHashMap<>();
+    }
+
+
+    // Does nothing unless edt.watchdog is set, may be called from every entry point
+    public static synchronized void install() {
+        if (null != instance || !PluginPropertyManager.INSTANCE.getBoolean(PluginPropertyManager.PROPERTY_KEY_EDT_WATCHDOG)) { return; }
+        instance = new EdtWatchdog(Math.max(1, PluginPropertyManager.INSTANCE.getLong(PluginPropertyManager.PROPERTY_KEY_EDT_WATCHDOG_THRESHOLD)));
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(instance);
+        final Thread sampler = new Thread(instance::sample, "edt-watchdog");
+        sampler.setDaemon(true);
+        sampler.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(instance::logSummary, "edt-watchdog-summary"));
+        LOGGER.info("EDT watchdog installed, threshold {} ms", TimeUnit.NANOSECONDS.toMillis(instance.thresholdNanos));
+    }
+
+    // Null if the watchdog is not installed
+    public static synchronized EdtWatchdog getInstance() { return instance; }
+
+    // Worst first by the total time they blocked the EDT
+    public List<Offender> getOffenders() {
+        final List<Offender> list = new ArrayList<>(offenders.values());
+        list.sort((left, right) -> Long.compare(right.getTotalMillis(), left.getTotalMillis()));
+        return list;
+    }
+
+    // A modal dialog or file chooser dispatches events while the event that opened it is still running. The EDT is
+    // not blocked then, the time of the nested events is not added to the one of the outer event.
+    @Override protected void dispatchEvent(final AWTEvent event) {
+        final long                start      = System.nanoTime();
+        final AWTEvent            outer      = dispatching;
+        final long                outerSpent = null == outer ? 0 : spentNanos + (start - dispatchStart);
+        final StackTraceElement[] outerStack = stalledStack;
+        edt           = Thread.currentThread();
+        stalledStack  = null;
+        spentNanos    = 0;
+        dispatchStart = start;
+        dispatching   = event;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            final long                end      = System.nanoTime();
+            final long                duration = spentNanos + (end - dispatchStart);
+            final StackTraceElement[] stack    = stalledStack;
+            dispatching   = outer;
+            dispatchStart = end;
+            spentNanos    = outerSpent;
+            stalledStack  = outerStack;
+            if (duration >= thresholdNanos) { report(event, duration, stack); }
+        }
+    }
+
+    private void sample() {
+        final long interval = Math.max(1, TimeUnit.NANOSECONDS.toMillis(thresholdNanos) / 2);
+        while (true) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            final AWTEvent event  = dispatching;
+            final Thread   thread = edt;
+            if (null == event || null == thread || null != stalledStack) { continue; }
+            if (spentNanos + (System.nanoTime() - dispatchStart) < thresholdNanos) { continue; }
+            final StackTraceElement[] stack = thread.getStackTrace();
+            if (dispatching == event) { stalledStack = stack; }
+        }
+    }
+
+    // An event that ended before the sampler saw it has no stack of the stall, only the event itself is known
+    private void report(final AWTEvent event, final long duration, final StackTraceElement[] stack) {
+        final String offender = null == stack ? describe(event) : findOffender(stack, event);
+        final long   millis   = TimeUnit.NANOSECONDS.toMillis(duration);
+        offenders.computeIfAbsent(offender, Offender::new).record(millis);
+        if (LOGGER.isWarnEnabled()) {
+            final StringBuilder builder = new StringBuilder();
+            if (null != stack) {
+                for (int i = 0 ; i < Math.min(MAX_FRAMES, stack.length) ; i++) { builder.append("\n\tat ").append(stack[i]); }
+            }
+            LOGGER.warn("EDT blocked for {} ms by {} ({}){}", millis, offender, describe(event), builder);
+        }
+    }
+
+    private void logSummary() {
+        final List<Offender> list = getOffenders();
+        if (list.isEmpty()) { return; }
+        final StringBuilder builder = new StringBuilder("EDT stalls, worst first:");
+        for (Offender offender : list.subList(0, Math.min(SUMMARY_SIZE, list.size()))) { builder.append("\n\t").append(offender); }
+        LOGGER.warn(builder.toString());
+    }
+
+    private static String findOffender(final StackTraceElement[] stack, final AWTEvent event) {
+        for (StackTraceElement frame : stack) {
+            if (frame.getClassName().startsWith(PACKAGE) && !frame.getClassName().startsWith(EdtWatchdog.class.getName())) {
+                return frame.getClassName().substring(PACKAGE.length()) + "." + frame.getMethodName();
+            }
+        }
+        return stack.length > 0 ? stack[0].getClassName() + "." + stack[0].getMethodName() : describe(event);
+    }
+
+    private static String describe(final AWTEvent event) {
+        final String source  = event.getSource().getClass().getSimpleName();
+        final String command = event instanceof ActionEvent ? " \"" + ((ActionEvent) event).getActionCommand() + "\"" : "";
+        return event.getClass().getSimpleName() + command + " on " + source;
+    }
+
+
+    // ******************** Inner classes *************************************
+    public static class Offender {
+        private final    String    name;
+        private final    LongAdder count;
+        private final    LongAdder totalMillis;
+        private volatile long      maxMillis;
+
+        Offender(final String name) {
+            this.name        = name;
+            this.count       = new LongAdder();
+            this.totalMillis = new LongAdder();
+        }
+
+        void record(final long millis) {
+            count.increment();
+            totalMillis.add(millis);
+            if (millis > maxMillis) { maxMillis = millis; }
+        }
+
+        public String getName() { return name; }
+
+        public long getCount() { return count.sum(); }
+
+        public long getTotalMillis() { return totalMillis.sum(); }
+
+        public long getMaxMillis() { return maxMillis; }
+
+        @Override public String toString() { return String.format("%s: %d stalls, %d ms total, %d ms max", name, getCount(), getTotalMillis(), getMaxMillis()); }
+    }
+}
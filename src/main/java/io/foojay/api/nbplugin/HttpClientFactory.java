@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+
+// One HttpClient for the whole plugin, so the many small api calls reuse pooled (and with HTTP/2 multiplexed)
+// connections instead of paying the TCP and TLS handshake for every call
+public class HttpClientFactory {
+    private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+    private static final String KEEP_ALIVE_SECONDS  = "300";
+
+    private HttpClientFactory() {}
+
+
+    public static HttpClient getSharedClient() { return SharedClientHolder.INSTANCE; }
+
+    public static HttpClient newClient() {
+        // Idle connections are closed after 20 minutes (30 seconds since Java 20) by default, only set if nobody else did
+        if (null == System.getProperty(KEEP_ALIVE_PROPERTY)) { System.setProperty(KEEP_ALIVE_PROPERTY, KEEP_ALIVE_SECONDS); }
+        return HttpClient.newBuilder()
+                         .version(Version.HTTP_2)
+                         .followRedirects(Redirect.NORMAL)
+                         .connectTimeout(Duration.ofSeconds(PluginPropertyManager.INSTANCE.getLong(PluginPropertyManager.PROPERTY_KEY_HTTP_CONNECT_TIMEOUT)))
+                         .build();
+    }
+
+    // The request timeout only covers the time until the response headers arrive, a long download is not cut off
+    public static HttpRequest.Builder newRequest(final String url) {
+        return HttpRequest.newBuilder()
+                          .uri(URI.create(url))
+                          .timeout(Duration.ofSeconds(PluginPropertyManager.INSTANCE.getLong(PluginPropertyManager.PROPERTY_KEY_HTTP_REQUEST_TIMEOUT)));
+    }
+
+    // Json compresses well, the HttpClient doesn't ask for compressed responses or decode them by itself
+    public static HttpRequest.Builder newCompressedRequest(final String url) {
+        return newRequest(url).header("Accept-Encoding", "gzip, deflate");
+    }
+
+    // Decodes the body of a response to a request of newCompressedRequest(), a 304 has no body whatever its headers say
+    public static InputStream decode(final HttpResponse<InputStream> response) throws IOException {
+        if (response.statusCode() == DiscoApi.HTTP_NOT_MODIFIED || response.headers().firstValueAsLong("Content-Length").orElse(-1) == 0) { return response.body(); }
+        final String encoding = response.headers().firstValue("Content-Encoding").orElse("").trim();
+        if ("gzip".equalsIgnoreCase(encoding))    { return new DecodedInputStream(new GZIPInputStream(response.body()), response.body()); }
+        if ("deflate".equalsIgnoreCase(encoding)) { return new DecodedInputStream(new InflaterInputStream(response.body()), response.body()); }
+        return response.body();
+    }
+
+
+    // ******************** Inner classes *************************************
+    private static class SharedClientHolder {
+        private static final HttpClient INSTANCE = newClient();
+    }
+
+    // The decompressor stops at the end of the compressed data without reading the end of the body, but the
+    // HttpClient only puts a connection back into the pool once its body was read to the end
+    private static class DecodedInputStream extends FilterInputStream {
+        private static final int         MAX_DRAIN = 8 * 1024;
+        private final        InputStream body;
+
+        DecodedInputStream(final InputStream decoded, final InputStream body) {
+            super(decoded);
+            this.body = body;
+        }
+
+        @Override public void close() throws IOException {
+            try {
+                // A body that was closed early is not read to its end, the connection is dropped instead
+                body.readNBytes(MAX_DRAIN);
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
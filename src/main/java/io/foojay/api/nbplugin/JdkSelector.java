@@ -28,7 +28,13 @@ import io.foojay.api.discoclient.bundle.Release;
 import io.foojay.api.discoclient.bundle.ReleaseStatus;
 import io.foojay.api.discoclient.bundle.SupportTerm;
 import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.event.DCEvent;
 import io.foojay.api.discoclient.util.BundleFileInfo;
+import io.foojay.api.nbplugin.DownloadManager.Download;
+import io.foojay.api.nbplugin.DownloadManager.Priority;
+import io.foojay.api.nbplugin.DownloadManager.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -45,11 +51,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 
 public class JdkSelector extends JPanel {
+    private static final Logger                       LOGGER                 = LoggerFactory.getLogger(JdkSelector.class);
     private static final Color                        DOWNLOAD_AREA_STD      = new Color(28, 107, 177);
     private static final Color                        DOWNLOAD_AREA_HOVER    = new Color(4, 124, 192);
     private static final Color                        DOWNLOAD_AREA_DISABLED = new Color(128, 128, 128);
@@ -58,33 +67,35 @@ public class JdkSelector extends JPanel {
     private static final Color                        BACKGROUND_COLOR       = new Color(45, 45, 45);
     private static final Color                        TEXT_COLOR             = new Color(164, 164, 164);
     private              DiscoClient                  discoClient;
+    private              AsyncDiscoClient             asyncDiscoClient;
+    private              DownloadManager              downloadManager;
+    private              CoalescingUpdater<DCEvent>   downloadStateUpdater;
     private              int                          selectedFeatureVersion;
-    private              Release                      jdk8;
-    private              Release                      lastLtsRelease;
-    private              Release                      currentRelease;
     private              JLabel                       osLabel;
     private              ButtonGroup                  buttonGroup;
     private              Map<Integer, JRadioButton>   jdkSelectors;
+    private              Box                          jdkSelectorBox;
+    private              JLabel                       releaseLabel;
     private              JLabel                       distributionLabel;
     private              RJPanel                      downloadArea;
     private              JLabel                       downloadLabel;
     private              JLabel                       versionNumberLabel;
     private              JLabel                       fileNameLabel;
-    private              List<Bundle>                 bundles;
     private              JFileChooser                 directoryChooser;
     private              JProgressBar                 progressBar;
     private              JComboBox<Extension>         extensionComboBox;
     private              Map<Integer, BundleFileInfo> bundleMap;
-    private              List<Bundle>                 bundlesFound8;
-    private              List<Bundle>                 bundlesFoundLastLts;
-    private              List<Bundle>                 bundlesFoundCurrent;
+    private              Map<Integer, List<Bundle>>   bundlesFound;
+    private              int                          bundleMapGeneration;
+    private              Map<Integer, Long>           lookupLatencies;
+    private              long                         bundleMapLatency;
 
 
     public JdkSelector() {
+        EdtWatchdog.install();
         init();
         registerListeners();
-
-        updateBundleMap(Distribution.ZULU, 8, Integer.valueOf(lastLtsRelease.getVersionNumber()), Integer.valueOf(currentRelease.getVersionNumber()));
+        loadReleases();
     }
 
 
@@ -92,7 +103,9 @@ public class JdkSelector extends JPanel {
         setPreferredSize(new Dimension(400, 300));
 
         discoClient            = new DiscoClient();
-        bundles                = new ArrayList<>();
+        asyncDiscoClient       = new AsyncDiscoClient(discoClient);
+        downloadManager        = new DownloadManager(asyncDiscoClient);
+        downloadStateUpdater   = new CoalescingUpdater<>(e -> updateDownloadState());
         progressBar            = new JProgressBar(0, 100);
         progressBar.setPreferredSize(new Dimension(progressBar.getPreferredSize().width, 5));
         progressBar.setForeground(Color.WHITE);
@@ -103,21 +116,12 @@ public class JdkSelector extends JPanel {
         extensionComboBox.setEnabled(false);
         extensionComboBox.setMaximumSize(new Dimension(80, extensionComboBox.getPreferredSize().height));
         extensionComboBox.addActionListener(e -> {
-            if (selectedFeatureVersion == 8) {
-                Optional<Bundle> selectedBundle = bundlesFound8.stream().filter(bundle -> bundle.getExtension().equals(extensionComboBox.getSelectedItem())).findFirst();
-                if (selectedBundle.isPresent()) { updateSelectedBundle(selectedFeatureVersion, selectedBundle.get());}
-            } else if (selectedFeatureVersion == lastLtsRelease.getFeatureVersion()) {
-                Optional<Bundle> selectedBundle = bundlesFoundLastLts.stream().filter(bundle -> bundle.getExtension().equals(extensionComboBox.getSelectedItem())).findFirst();
-                if (selectedBundle.isPresent()) { updateSelectedBundle(selectedFeatureVersion, selectedBundle.get());}
-            } else if (selectedFeatureVersion == currentRelease.getFeatureVersion()) {
-                Optional<Bundle> selectedBundle = bundlesFoundCurrent.stream().filter(bundle -> bundle.getExtension().equals(extensionComboBox.getSelectedItem())).findFirst();
-                if (selectedBundle.isPresent()) { updateSelectedBundle(selectedFeatureVersion, selectedBundle.get());}
-            }
+            Optional<Bundle> selectedBundle = bundlesFound.getOrDefault(selectedFeatureVersion, List.of()).stream().filter(bundle -> bundle.getExtension().equals(extensionComboBox.getSelectedItem())).findFirst();
+            if (selectedBundle.isPresent()) { updateSelectedBundle(selectedFeatureVersion, selectedBundle.get());}
         });
-        bundleMap           = new HashMap<>();
-        bundlesFound8       = new ArrayList<>();
-        bundlesFoundLastLts = new ArrayList<>();
-        bundlesFoundCurrent = new ArrayList<>();
+        bundleMap       = new HashMap<>();
+        lookupLatencies = new HashMap<>();
+        bundlesFound    = new HashMap<>();
 
         directoryChooser = new JFileChooser();
         directoryChooser.setCurrentDirectory(new File("."));
@@ -128,17 +132,17 @@ public class JdkSelector extends JPanel {
         osLabel = new JLabel("Download for " + discoClient.getOperatingSystem().getUiString());
         osLabel.setForeground(TEXT_COLOR);
 
-        jdk8           = discoClient.getRelease("8");
-        lastLtsRelease = discoClient.getRelease(Release.LAST_LTS_RELEASE);
-        currentRelease = discoClient.getRelease(Release.LATEST_RELEASE);
-
+        // The selectors are added once the releases are loaded, until then a disabled placeholder is shown
         buttonGroup  = new ButtonGroup();
         jdkSelectors = new ConcurrentHashMap<>();
-        jdkSelectors.put(8, createRadioButton(jdk8, buttonGroup));
-        jdkSelectors.put(Integer.valueOf(lastLtsRelease.getVersionNumber()), createRadioButton(lastLtsRelease, buttonGroup));
-        if (!currentRelease.getVersionNumber().equals(lastLtsRelease.getVersionNumber())) {
-            jdkSelectors.put(Integer.valueOf(currentRelease.getVersionNumber()), createRadioButton(currentRelease, buttonGroup));
-        }
+        releaseLabel = new JLabel("Loading releases...");
+        releaseLabel.setForeground(DISABLED_LABEL_COLOR);
+        releaseLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        releaseLabel.setEnabled(false);
+        jdkSelectorBox = Box.createVerticalBox();
+        jdkSelectorBox.setAlignmentX(Component.LEFT_ALIGNMENT);
+        jdkSelectorBox.add(releaseLabel);
+        jdkSelectorBox.add(Box.createRigidArea(new Dimension(0, 10)));
 
         distributionLabel = new JLabel("Distribution");
         Font distributionLabelFont = distributionLabel.getFont();
@@ -187,10 +191,7 @@ public class JdkSelector extends JPanel {
         Box vBox = Box.createVerticalBox();
         vBox.add(osLabel);
         vBox.add(Box.createRigidArea(new Dimension(0, 10)));
-        jdkSelectors.values().forEach(radioButton -> {
-            vBox.add(radioButton);
-            vBox.add(Box.createRigidArea(new Dimension(0, 10)));
-        });
+        vBox.add(jdkSelectorBox);
         vBox.add(Box.createRigidArea(new Dimension(0, 10)));
         vBox.add(distributionLabel);
         vBox.add(Box.createRigidArea(new Dimension(0, 10)));
@@ -205,32 +206,14 @@ public class JdkSelector extends JPanel {
     }
 
     private void registerListeners() {
-        discoClient.setOnDCEvent(e -> {
-            switch(e.getType()) {
-                case DOWNLOAD_STARTED :
-                    SwingUtilities.invokeLater(() -> {
-                        progressBar.setVisible(true);
-                        jdkSelectors.values().forEach(radioButton -> radioButton.setEnabled(false));
-                    });
-                    break;
-                case DOWNLOAD_PROGRESS:
-                    SwingUtilities.invokeLater(() -> progressBar.setValue((int) ((double) e.getFraction() / (double) e.getFileSize() * 100)));
-                    break;
-                case DOWNLOAD_FINISHED:
-                    SwingUtilities.invokeLater(() -> {
-                        progressBar.setValue(0);
-                        progressBar.setVisible(false);
-                        jdkSelectors.values().forEach(radioButton -> radioButton.setEnabled(true));
-                    });
-                    break;
-            }
-        });
+        // Downloads run in the background, the download area follows the one of the selected bundle
+        downloadManager.setOnStateChanged(download -> SwingUtilities.invokeLater(this::updateDownloadState));
+        downloadManager.setOnDCEvent((download, e) -> downloadStateUpdater.update(e));
 
         distributionLabel.addMouseListener(new MouseAdapter() {
             @Override public void mousePressed(final MouseEvent e) {
-                if (progressBar.isVisible()) { return; }
                 Distribution distribution = showDistributionDialog(getParent());
-                updateBundleMap(distribution, 8, Integer.valueOf(lastLtsRelease.getVersionNumber()), Integer.valueOf(currentRelease.getVersionNumber()));
+                updateBundleMap(distribution, jdkSelectors.keySet().toArray(new Integer[0]));
             }
             @Override public void mouseEntered(final MouseEvent e) {
                 if (downloadArea.isEnabled()) {
@@ -277,6 +260,50 @@ public class JdkSelector extends JPanel {
         });
     }
 
+    private void loadReleases() {
+        final CompletableFuture<Release> jdk8Future           = getRelease("8");
+        final CompletableFuture<Release> lastLtsReleaseFuture = getRelease(Release.LAST_LTS_RELEASE);
+        final CompletableFuture<Release> currentReleaseFuture = getRelease(Release.LATEST_RELEASE);
+        CompletableFuture.allOf(jdk8Future, lastLtsReleaseFuture, currentReleaseFuture)
+                         .thenRun(() -> SwingUtilities.invokeLater(() -> applyReleases(jdk8Future.join(), lastLtsReleaseFuture.join(), currentReleaseFuture.join())));
+    }
+
+    private CompletableFuture<Release> getRelease(final String version) {
+        return asyncDiscoClient.getRelease(version).exceptionally(throwable -> {
+            LOGGER.debug("Error loading release {} : {}", version, throwable.getMessage());
+            return null;
+        });
+    }
+
+    private void applyReleases(final Release... releases) {
+        boolean missing = false;
+        for (Release release : releases) {
+            if (null == release) {
+                missing = true;
+                continue;
+            }
+            final Integer featureVersion = Integer.valueOf(release.getVersionNumber());
+            if (!jdkSelectors.containsKey(featureVersion)) { jdkSelectors.put(featureVersion, createRadioButton(release, buttonGroup)); }
+        }
+
+        // Releases that could not be loaded leave the label in place as an error state
+        jdkSelectorBox.removeAll();
+        if (missing) {
+            releaseLabel.setText(jdkSelectors.isEmpty() ? "Releases not available" : "Some releases not available");
+            releaseLabel.setToolTipText("Releases could not be loaded from the Disco API");
+            jdkSelectorBox.add(releaseLabel);
+            jdkSelectorBox.add(Box.createRigidArea(new Dimension(0, 10)));
+        }
+        jdkSelectors.values().forEach(radioButton -> {
+            jdkSelectorBox.add(radioButton);
+            jdkSelectorBox.add(Box.createRigidArea(new Dimension(0, 10)));
+        });
+        revalidate();
+        repaint();
+
+        updateBundleMap(Distribution.ZULU, jdkSelectors.keySet().toArray(new Integer[0]));
+    }
+
     private JRadioButton createRadioButton(final Release release, final ButtonGroup buttonGroup) {
         JRadioButton radioButton = new JRadioButton("JDK " + release.getVersionNumber());
         radioButton.setForeground(TEXT_COLOR);
@@ -296,22 +323,34 @@ public class JdkSelector extends JPanel {
         fileNameLabel.setForeground(Color.WHITE);
 
         extensionComboBox.removeAllItems();
-        if (featureVersion == 8) {
-            bundlesFound8.forEach(bundle -> extensionComboBox.addItem(bundle.getExtension()));
-        } else if (featureVersion == lastLtsRelease.getFeatureVersion()) {
-            bundlesFoundLastLts.forEach(bundle -> extensionComboBox.addItem(bundle.getExtension()));
-        } else if (featureVersion == currentRelease.getFeatureVersion()) {
-            bundlesFoundCurrent.forEach(bundle -> extensionComboBox.addItem(bundle.getExtension()));
-        }
+        bundlesFound.getOrDefault(featureVersion, List.of()).forEach(bundle -> extensionComboBox.addItem(bundle.getExtension()));
         extensionComboBox.setEnabled(extensionComboBox.getItemCount() != 0);
 
         final BundleFileInfo selectedBundleInfo = bundleMap.get(featureVersion);
-        versionNumberLabel.setText(selectedBundleInfo.getVersionNumber().toString());
-        fileNameLabel.setText(selectedBundleInfo.getFileName());
+        versionNumberLabel.setText(null == selectedBundleInfo ? "-" : selectedBundleInfo.getVersionNumber().toString());
+        fileNameLabel.setText(null == selectedBundleInfo ? "-" : selectedBundleInfo.getFileName());
+        updateDownloadState();
+    }
+
+    private void updateDownloadState() {
+        final BundleFileInfo bundleFileInfo = bundleMap.get(selectedFeatureVersion);
+        final Download       download       = null == bundleFileInfo ? null : downloadManager.getDownload(bundleFileInfo.getId());
+        if (null == download) {
+            downloadLabel.setText("Download");
+            progressBar.setValue(0);
+            progressBar.setVisible(false);
+        } else {
+            downloadLabel.setText(download.getState() == State.QUEUED ? "Queued" : "Cancel");
+            progressBar.setValue(download.getPercent());
+            progressBar.setVisible(true);
+        }
     }
 
     private void downloadBundle(final Container parent, final Integer featureVersion) {
-        if (!downloadArea.isEnabled() || progressBar.isVisible() || null == bundleMap.get(featureVersion)) { return; }
+        if (!downloadArea.isEnabled() || null == bundleMap.get(featureVersion)) { return; }
+
+        // Clicking on the download area of a bundle that is queued or running cancels it
+        if (downloadManager.cancel(bundleMap.get(featureVersion).getId())) { return; }
 
         String targetFolder;
         if (directoryChooser.showOpenDialog(parent) == JFileChooser.APPROVE_OPTION) {
@@ -325,45 +364,20 @@ public class JdkSelector extends JPanel {
             long           bundleId               = selectedBundleFileInfo.getId();
             String         fileName               = selectedBundleFileInfo.getFileName();
             VersionNumber  versionNumber          = selectedBundleFileInfo.getVersionNumber();
-            discoClient.downloadBundle(bundleId, targetFolder + File.separator + fileName, versionNumber);
+            downloadManager.enqueue(bundleId, targetFolder + File.separator + fileName, versionNumber, Priority.NORMAL, null);
         }
     }
 
     private void updateBundleMap(final Distribution distribution, final Integer... featureVersions) {
         if (null == featureVersions || featureVersions.length == 0) { return; }
+        final int generation = ++bundleMapGeneration;
         extensionComboBox.removeAllItems();
         extensionComboBox.setEnabled(false);
-        bundlesFound8.clear();
-        bundlesFoundLastLts.clear();
-        bundlesFoundCurrent.clear();
+        bundlesFound.clear();
         bundleMap.clear();
 
-        for (Integer featureVersion : featureVersions) {
-            bundles = discoClient.getBundles(distribution, new VersionNumber(featureVersion), Latest.OVERALL,
-                                             discoClient.getOperatingSystem(), Architecture.NONE, Bitness.NONE,
-                                             Extension.NONE, BundleType.JDK, false, ReleaseStatus.GA, SupportTerm.NONE);
-
-            if (bundles.isEmpty()) {
-                bundleMap.put(featureVersion, null);
-                jdkSelectors.get(featureVersion).setEnabled(false);
-                jdkSelectors.get(featureVersion).setToolTipText("Not available for " + discoClient.getOperatingSystem().getUiString());
-            } else {
-                if (featureVersion == 8) {
-                    bundlesFound8 = bundles.stream().filter(bundle -> bundle.getVersionNumber().getFeature().getAsInt() == featureVersion).collect(Collectors.toList());
-                } else if (featureVersion == lastLtsRelease.getFeatureVersion()) {
-                    bundlesFoundLastLts = bundles.stream().filter(bundle -> bundle.getVersionNumber().getFeature().getAsInt() == featureVersion).collect(Collectors.toList());
-                } else if (featureVersion == currentRelease.getFeatureVersion()) {
-                    bundlesFoundCurrent = bundles.stream().filter(bundle -> bundle.getVersionNumber().getFeature().getAsInt() == featureVersion).collect(Collectors.toList());
-                }
-
-                Bundle bundleFound = bundles.stream().filter(bundle -> bundle.getVersionNumber().getFeature().getAsInt() == featureVersion).findFirst().get();
-                bundleMap.put(featureVersion, discoClient.getBundleFileInfoSCDL(bundleFound.getId(), bundleFound.getVersionNumber()));
-                jdkSelectors.get(featureVersion).setEnabled(true);
-                jdkSelectors.get(featureVersion).setToolTipText(null);
-            }
-        }
-
         buttonGroup.clearSelection();
+        jdkSelectors.values().forEach(radioButton -> radioButton.setEnabled(false));
         downloadArea.setEnabled(false);
         downloadArea.setBackground(DOWNLOAD_AREA_DISABLED);
         downloadLabel.setForeground(DISABLED_LABEL_COLOR);
@@ -371,13 +385,84 @@ public class JdkSelector extends JPanel {
         fileNameLabel.setForeground(DISABLED_LABEL_COLOR);
         versionNumberLabel.setText("-");
         fileNameLabel.setText("-");
+        updateDownloadState();
+
+        // The versions are looked up concurrently and shown together once all of them are known
+        final long                                          start   = System.nanoTime();
+        final AsyncLimiter                                  limiter = new AsyncLimiter(PluginPropertyManager.INSTANCE.getInt(PluginPropertyManager.PROPERTY_KEY_LOOKUP_PARALLELISM));
+        final List<CompletableFuture<FeatureVersionLookup>> lookups = new ArrayList<>();
+        for (Integer featureVersion : featureVersions) {
+            lookups.add(limiter.submit(() -> lookupFeatureVersion(distribution, featureVersion)));
+        }
+        CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            final long latency = System.nanoTime() - start;
+            SwingUtilities.invokeLater(() -> {
+                if (generation != bundleMapGeneration) { return; }
+                lookupLatencies.clear();
+                for (CompletableFuture<FeatureVersionLookup> future : lookups) {
+                    final FeatureVersionLookup lookup = future.join();
+                    applyFeatureVersionLookup(lookup);
+                    lookupLatencies.put(lookup.featureVersion, TimeUnit.NANOSECONDS.toMillis(lookup.latency));
+                }
+                bundleMapLatency = TimeUnit.NANOSECONDS.toMillis(latency);
+                LOGGER.debug("Bundle map for {} updated in {} ms (parallelism {}), lookups in ms {}", distribution, bundleMapLatency, limiter.getMaxConcurrent(), lookupLatencies);
+            });
+        });
+    }
+
+    public Map<Integer, Long> getLookupLatencies() { return new HashMap<>(lookupLatencies); }
+
+    public long getBundleMapLatency() { return bundleMapLatency; }
+
+    private CompletableFuture<FeatureVersionLookup> lookupFeatureVersion(final Distribution distribution, final Integer featureVersion) {
+        final long        start = System.nanoTime();
+        final BundleQuery query = new BundleQuery(distribution, new VersionNumber(featureVersion), Latest.OVERALL,
+                                                  discoClient.getOperatingSystem(), Architecture.NONE, Bitness.NONE,
+                                                  Extension.NONE, BundleType.JDK, false, ReleaseStatus.GA, SupportTerm.NONE);
+        return asyncDiscoClient.getBundles(query).thenCompose(bundles -> {
+            List<Bundle> bundlesFound = bundles.stream().filter(bundle -> bundle.getVersionNumber().getFeature().getAsInt() == featureVersion).collect(Collectors.toList());
+            if (bundlesFound.isEmpty()) {
+                return CompletableFuture.completedFuture(new FeatureVersionLookup(featureVersion, bundlesFound, null, System.nanoTime() - start));
+            }
+            Bundle bundleFound = bundlesFound.get(0);
+            return asyncDiscoClient.getBundleFileInfoSCDL(bundleFound.getId(), bundleFound.getVersionNumber())
+                                   .thenApply(bundleFileInfo -> new FeatureVersionLookup(featureVersion, bundlesFound, bundleFileInfo, System.nanoTime() - start));
+        }).exceptionally(throwable -> {
+            LOGGER.debug("Error looking up JDK {} : {}", featureVersion, throwable.getMessage());
+            return new FeatureVersionLookup(featureVersion, List.of(), null, System.nanoTime() - start);
+        });
+    }
+
+    private void applyFeatureVersionLookup(final FeatureVersionLookup lookup) {
+        final Integer featureVersion = lookup.featureVersion;
+        if (lookup.bundles.isEmpty()) {
+            bundleMap.put(featureVersion, null);
+            jdkSelectors.get(featureVersion).setEnabled(false);
+            jdkSelectors.get(featureVersion).setToolTipText("Not available for " + discoClient.getOperatingSystem().getUiString());
+        } else {
+            bundlesFound.put(featureVersion, lookup.bundles);
+            bundleMap.put(featureVersion, lookup.bundleFileInfo);
+            jdkSelectors.get(featureVersion).setEnabled(true);
+            jdkSelectors.get(featureVersion).setToolTipText(null);
+        }
     }
 
     private void updateSelectedBundle(final int featureVersion, final Bundle bundle) {
-        bundleMap.put(featureVersion, discoClient.getBundleFileInfo(bundle.getId(), bundle.getVersionNumber()));
-        final BundleFileInfo selectedBundleInfo = bundleMap.get(featureVersion);
-        versionNumberLabel.setText(selectedBundleInfo.getVersionNumber().toString());
-        fileNameLabel.setText(selectedBundleInfo.getFileName());
+        asyncDiscoClient.getBundleFileInfo(bundle.getId(), bundle.getVersionNumber()).whenComplete((bundleFileInfo, throwable) -> SwingUtilities.invokeLater(() -> {
+            if (featureVersion != selectedFeatureVersion || bundle.getExtension() != extensionComboBox.getSelectedItem()) { return; }
+            bundleMap.put(featureVersion, bundleFileInfo);
+            if (null == bundleFileInfo) {
+                LOGGER.debug("No file info for bundle {} : {}", bundle.getId(), null == throwable ? "not found" : throwable.getMessage());
+                versionNumberLabel.setText("-");
+                fileNameLabel.setText("-");
+                jdkSelectors.get(featureVersion).setToolTipText("No download available for " + bundle.getExtension().getUiString());
+            } else {
+                versionNumberLabel.setText(bundleFileInfo.getVersionNumber().toString());
+                fileNameLabel.setText(bundleFileInfo.getFileName());
+                jdkSelectors.get(featureVersion).setToolTipText(null);
+            }
+            updateDownloadState();
+        }));
     }
 
     private Distribution showDistributionDialog(final Container parent) {
@@ -389,6 +474,20 @@ public class JdkSelector extends JPanel {
 
 
     // ******************** Inner classes *************************************
+    private static class FeatureVersionLookup {
+        private final Integer        featureVersion;
+        private final List<Bundle>   bundles;
+        private final BundleFileInfo bundleFileInfo;
+        private final long           latency;
+
+        FeatureVersionLookup(final Integer featureVersion, final List<Bundle> bundles, final BundleFileInfo bundleFileInfo, final long latency) {
+            this.featureVersion = featureVersion;
+            this.bundles        = bundles;
+            this.bundleFileInfo = bundleFileInfo;
+            this.latency        = latency;
+        }
+    }
+
     class RJPanel extends JPanel {
         private int arcWidth;
         private int archHeight;
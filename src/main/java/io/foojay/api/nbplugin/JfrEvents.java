@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.foojay.api.nbplugin;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+// The only class that touches jdk.jfr, Metrics doesn't load it if the module is missing. An event costs next to
+// nothing while no recording is running, e.g. jcmd <pid> JFR.start shows the calls in JDK Mission Control.
+class JfrEvents {
+
+    private JfrEvents() {}
+
+
+    static Object begin(final String operation) {
+        final NetworkCallEvent event = new NetworkCallEvent();
+        if (!event.isEnabled()) { return null; }
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    static void commit(final Object event, final long bytes, final boolean failed) {
+        final NetworkCallEvent networkCallEvent = (NetworkCallEvent) event;
+        networkCallEvent.end();
+        networkCallEvent.bytes  = bytes;
+        networkCallEvent.failed = failed;
+        networkCallEvent.commit();
+    }
+
+
+    // ******************** Inner classes *************************************
+    @Name("io.foojay.api.nbplugin.NetworkCall")
+    @Label("Disco Network Call")
+    @Category({ "foojay", "Disco API" })
+    @Description("A call to the disco api or a bundle download")
+    static class NetworkCallEvent extends Event {
+        @Label("Operation")
+        String  operation;
+
+        @Label("Bytes")
+        @DataAmount
+        long    bytes;
+
+        @Label("Failed")
+        boolean failed;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+
+// Bounded by number of entries and entry age, concurrent loads of the same key are coalesced into one
+public class LruCache<K, V> {
+    private final int                          maxSize;
+    private final long                         maxAge;
+    private final Predicate<V>                 cacheable;
+    private final CacheStats                   stats;
+    private final Map<K, CacheEntry<V>>        entries;
+    private final Map<K, CompletableFuture<V>> inFlight;
+
+
+    public LruCache(final String name, final int maxSize, final long maxAge) {
+        this(name, maxSize, maxAge, value -> null != value);
+    }
+    public LruCache(final String name, final int maxSize, final long maxAge, final Predicate<V> cacheable) {
+        this.maxSize   = maxSize;
+        this.maxAge    = maxAge;
+        this.cacheable = cacheable;
+        this.stats     = Metrics.INSTANCE.getCache(name);
+        this.entries   = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(final Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    stats.recordEviction();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.inFlight  = new ConcurrentHashMap<>();
+    }
+
+
+    public CacheStats getStats() { return stats; }
+
+    public int size() {
+        synchronized (entries) { return entries.size(); }
+    }
+
+    public void clear() {
+        synchronized (entries) { entries.clear(); }
+    }
+
+    public V get(final K key, final Function<K, V> loader) {
+        while (true) {
+            final V value = getIfPresent(key);
+            if (null != value) {
+                stats.recordHit();
+                return value;
+            }
+
+            final CompletableFuture<V> future   = new CompletableFuture<>();
+            final CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+            if (null == existing) { return load(key, loader, future); }
+
+            stats.recordCoalesced();
+            try {
+                return await(existing);
+            } catch (CancellationException e) {
+                // The loading thread was interrupted and gave up, load again unless this thread was interrupted too
+                if (Thread.currentThread().isInterrupted()) { throw e; }
+            }
+        }
+    }
+
+    private V load(final K key, final Function<K, V> loader, final CompletableFuture<V> future) {
+        try {
+            // Another thread might have finished loading between the lookup and the registration
+            V value = getIfPresent(key);
+            if (null == value) {
+                stats.recordMiss();
+                value = loader.apply(key);
+                // An interrupted loader returns whatever it has, that must neither be cached nor handed to the waiting threads
+                if (Thread.currentThread().isInterrupted()) {
+                    inFlight.remove(key, future);
+                    future.cancel(false);
+                    return value;
+                }
+                if (cacheable.test(value)) { put(key, value); }
+            } else {
+                stats.recordHit();
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public V getIfPresent(final K key) {
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if (null == entry) { return null; }
+            if (System.currentTimeMillis() - entry.createdAt > maxAge) {
+                entries.remove(key);
+                stats.recordEviction();
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    public void put(final K key, final V value) {
+        synchronized (entries) { entries.put(key, new CacheEntry<>(value, System.currentTimeMillis())); }
+    }
+
+    private V await(final CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a coalesced request");
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+
+    // ******************** Inner classes *************************************
+    private static class CacheEntry<V> {
+        private final V    value;
+        private final long createdAt;
+
+        CacheEntry(final V value, final long createdAt) {
+            this.value     = value;
+            this.createdAt = createdAt;
+        }
+    }
+}
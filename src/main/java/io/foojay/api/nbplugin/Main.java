@@ -31,37 +31,61 @@ import io.foojay.api.discoclient.bundle.ReleaseStatus;
 import io.foojay.api.discoclient.bundle.SupportTerm;
 import io.foojay.api.discoclient.bundle.VersionNumber;
 import io.foojay.api.discoclient.event.DCEvent;
-import io.foojay.api.discoclient.util.BundleFileInfo;
+import io.foojay.api.nbplugin.DownloadManager.Download;
+import io.foojay.api.nbplugin.DownloadManager.Priority;
+import io.foojay.api.nbplugin.DownloadManager.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 
 public class Main {
-    private static final int        PREFERRED_WIDTH  = 600;
-    private static final int        PREFERRED_HEIGHT = 300;
-    private DiscoClient             discoClient;
-    private JComboBox<Integer>      versionComboBox;
-    private JComboBox<Distribution> distributionComboBox;
-    private JComboBox<BundleType>   bundleTypeComboBox;
-    private JComboBox<Extension>    extensionComboBox;
-    private BundleTableModel        tableModel;
-    private JTable                  table;
-    private JLabel                  filenameLabel;
-    private JProgressBar            progressBar;
-    private JButton                 downloadButton;
+    private static final Logger             LOGGER           = LoggerFactory.getLogger(Main.class);
+    private static final int                PREFERRED_WIDTH  = 600;
+    private static final int                PREFERRED_HEIGHT = 300;
+    private static final int                QUERY_DELAY      = 150;
+    private DiscoClient                     discoClient;
+    private AsyncDiscoClient                asyncDiscoClient;
+    private DownloadManager                 downloadManager;
+    private JComboBox<Integer>              versionComboBox;
+    private JComboBox<Distribution>         distributionComboBox;
+    private JComboBox<BundleType>           bundleTypeComboBox;
+    private JComboBox<Extension>            extensionComboBox;
+    private JTextField                      searchField;
+    private JComboBox<String>               vendorComboBox;
+    private JComboBox<ReleaseStatus>        releaseStatusComboBox;
+    private JTextField                      minVersionField;
+    private JTextField                      maxVersionField;
+    private BundleTableModel                tableModel;
+    private BundleRowSorter                 rowSorter;
+    private JTable                          table;
+    private JLabel                          filenameLabel;
+    private JProgressBar                    progressBar;
+    private JButton                         downloadButton;
+    private JButton                         cancelButton;
+    private DefaultListModel<Download>      downloadListModel;
+    private JList<Download>                 downloadList;
+    private CoalescingUpdater<DCEvent>      progressUpdater;
+    private Timer                           queryTimer;
+    private long                            queryGeneration;
+    private long                            displayedGeneration;
+    private CompletableFuture<List<Bundle>> pendingQuery;
 
 
     public Main() {
+        EdtWatchdog.install();
+
         JFrame frame = new JFrame("Foojay Disco API");
         frame.setSize(PREFERRED_WIDTH, PREFERRED_HEIGHT);
         frame.setLocationRelativeTo(null);
@@ -69,15 +93,29 @@ public class Main {
 
 
         // Setup disco client
-        discoClient = new DiscoClient();
-        discoClient.setOnDCEvent(e -> handleDCEvent(frame, e));
+        discoClient      = new DiscoClient();
+        asyncDiscoClient = new AsyncDiscoClient(discoClient);
+        downloadManager  = new DownloadManager(asyncDiscoClient);
+        progressUpdater  = new CoalescingUpdater<>(e -> updateDownloadProgress());
+        downloadManager.setOnStateChanged(download -> SwingUtilities.invokeLater(() -> {
+            updateDownloadList();
+            if (download.getState() == State.FINISHED) { tableModel.updateCached(); }
+        }));
+        downloadManager.setOnDCEvent((download, e) -> handleDCEvent(frame, download, e));
+
+        // Only query once the selection has been stable for QUERY_DELAY ms
+        queryTimer = new Timer(QUERY_DELAY, e -> updateData());
+        queryTimer.setRepeats(false);
 
 
         // Get release infos
-        Release lastLtsRelease = discoClient.getRelease(Release.LAST_LTS_RELEASE);
+        CompletableFuture<Release> lastLtsReleaseFuture = asyncDiscoClient.getRelease(Release.LAST_LTS_RELEASE);
+        CompletableFuture<Release> nextReleaseFuture    = asyncDiscoClient.getRelease(Release.NEXT_RELEASE);
+
+        Release lastLtsRelease = lastLtsReleaseFuture.join();
         Integer lastLtsFeatureRelease = Integer.valueOf(lastLtsRelease.getVersionNumber());
 
-        Release nextRelease = discoClient.getRelease(Release.NEXT_RELEASE);
+        Release nextRelease = nextReleaseFuture.join();
         Integer nextFeatureRelease = Integer.valueOf(nextRelease.getVersionNumber());
 
 
@@ -88,7 +126,7 @@ public class Main {
         for (Integer i = 6 ; i <= nextFeatureRelease ; i++) { versionNumbers.add(i); }
         versionComboBox = new JComboBox<>(versionNumbers.toArray(new Integer[0]));
         versionComboBox.setSelectedItem(lastLtsFeatureRelease);
-        versionComboBox.addActionListener(e -> updateData());
+        versionComboBox.addActionListener(e -> queryTimer.restart());
 
         Box versionsVBox = Box.createVerticalBox();
         versionsVBox.add(versionLabel);
@@ -103,7 +141,7 @@ public class Main {
         distributionComboBox = new JComboBox<>(distributions);
         distributionComboBox.setRenderer(new DistributionListCellRenderer());
         distributionComboBox.setSelectedItem(Distribution.ZULU);
-        distributionComboBox.addActionListener(e -> updateData());
+        distributionComboBox.addActionListener(e -> queryTimer.restart());
 
         Box distributionVBox = Box.createVerticalBox();
         distributionVBox.add(distributionLabel);
@@ -116,7 +154,7 @@ public class Main {
         bundleTypeLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
         BundleType[] bundleTypes = Arrays.stream(BundleType.values()).filter(bundleType -> BundleType.NONE != bundleType).filter(bundleType -> BundleType.NOT_FOUND != bundleType).toArray(BundleType[]::new);
         bundleTypeComboBox = new JComboBox<>(bundleTypes);
-        bundleTypeComboBox.addActionListener(e -> updateData());
+        bundleTypeComboBox.addActionListener(e -> queryTimer.restart());
 
         Box bundleTypeVBox = Box.createVerticalBox();
         bundleTypeVBox.add(bundleTypeLabel);
@@ -132,7 +170,8 @@ public class Main {
         Extension[] extensions = availableExtensions.toArray(Extension[]::new);
         extensionComboBox = new JComboBox(extensions);
         extensionComboBox.setRenderer(new ExtensionListCellRenderer());
-        extensionComboBox.addActionListener(e -> updateData());
+        // The extension is a column of the table, it narrows the rows without a new query
+        extensionComboBox.addActionListener(e -> applyFilter());
 
         Box extensionVBox = Box.createVerticalBox();
         extensionVBox.add(extensionLabel);
@@ -150,15 +189,51 @@ public class Main {
         Box vBox = Box.createVerticalBox();
         vBox.add(hBox);
 
+
+        // Filters, they work on the rows in the table and are applied while typing
+        searchField = new JTextField();
+        searchField.getDocument().addDocumentListener(onChange(this::applyFilter));
+
+        List<String> vendors = new ArrayList<>();
+        vendors.add("-");
+        Arrays.stream(Distribution.values()).map(Distribution::getVendor).filter(Objects::nonNull).distinct().sorted().forEach(vendors::add);
+        vendorComboBox = new JComboBox<>(vendors.toArray(new String[0]));
+        vendorComboBox.addActionListener(e -> applyFilter());
+
+        releaseStatusComboBox = new JComboBox<>(new ReleaseStatus[] { ReleaseStatus.NONE, ReleaseStatus.GA, ReleaseStatus.EA });
+        releaseStatusComboBox.setRenderer(new ReleaseStatusListCellRenderer());
+        releaseStatusComboBox.addActionListener(e -> applyFilter());
+
+        minVersionField = new JTextField(5);
+        minVersionField.getDocument().addDocumentListener(onChange(this::applyFilter));
+        maxVersionField = new JTextField(5);
+        maxVersionField.getDocument().addDocumentListener(onChange(this::applyFilter));
+
+        Box filterHBox = Box.createHorizontalBox();
+        filterHBox.setBorder(new EmptyBorder(5, 0, 5, 0));
+        filterHBox.add(new JLabel("Search "));
+        filterHBox.add(searchField);
+        filterHBox.add(new JLabel(" Vendor "));
+        filterHBox.add(vendorComboBox);
+        filterHBox.add(new JLabel(" Status "));
+        filterHBox.add(releaseStatusComboBox);
+        filterHBox.add(new JLabel(" Version "));
+        filterHBox.add(minVersionField);
+        filterHBox.add(new JLabel(" - "));
+        filterHBox.add(maxVersionField);
+        filterHBox.setMaximumSize(new Dimension(Integer.MAX_VALUE, 32));
+
         JPanel headerPanel = new JPanel();
         headerPanel.setLayout(new BoxLayout(headerPanel, BoxLayout.PAGE_AXIS));
         headerPanel.add(hBox);
+        headerPanel.add(filterHBox);
 
 
         // Table
         Font tableFont = versionLabel.getFont();
         tableFont = new Font(tableFont.getName(), Font.PLAIN, 13);
         tableModel = new BundleTableModel(List.of());
+        tableModel.setArchiveStore(asyncDiscoClient.getArchiveStore());
         table      = new JTable(tableModel);
         table.setFont(tableFont);
         table.setOpaque(true);
@@ -173,11 +248,12 @@ public class Main {
         table.setShowGrid(false);
         table.setIntercellSpacing(new Dimension(0, 1));
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        table.setAutoCreateRowSorter(true);
+        rowSorter  = new BundleRowSorter(tableModel);
+        table.setRowSorter(rowSorter);
         ListSelectionModel selectionModel = table.getSelectionModel();
         selectionModel.addListSelectionListener(e -> {
             downloadButton.setEnabled(table.getSelectedRow() >= 0);
-            filenameLabel.setText(tableModel.getFilename(table.getSelectedRow()));
+            filenameLabel.setText(tableModel.getFilename(getSelectedModelRow()));
         });
         JScrollPane tableScrollPane = new JScrollPane(table);
         tableScrollPane.setPreferredSize(new Dimension(PREFERRED_WIDTH, PREFERRED_HEIGHT));
@@ -194,13 +270,30 @@ public class Main {
         downloadButton.setEnabled(false);
         downloadButton.addActionListener(e -> downloadBundle(frame));
 
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(e -> {
+            Download download = downloadList.getSelectedValue();
+            if (null != download) { downloadManager.cancel(download); }
+        });
+
+        downloadListModel = new DefaultListModel<>();
+        downloadList      = new JList<>(downloadListModel);
+        downloadList.setCellRenderer(new DownloadListCellRenderer());
+        downloadList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        downloadList.setVisibleRowCount(3);
+        downloadList.addListSelectionListener(e -> cancelButton.setEnabled(null != downloadList.getSelectedValue()));
+        JScrollPane downloadScrollPane = new JScrollPane(downloadList);
+
         Box footerHBox = Box.createHorizontalBox();
         footerHBox.add(progressBar);
         footerHBox.add(downloadButton);
+        footerHBox.add(cancelButton);
 
         Box footerVBox = Box.createVerticalBox();
         footerVBox.add(filenameLabel);
         footerVBox.add(footerHBox);
+        footerVBox.add(downloadScrollPane);
 
         JPanel footerPanel = new JPanel();
         footerPanel.setBorder(new EmptyBorder(5, 10, 5, 10));
@@ -227,45 +320,91 @@ public class Main {
         OperatingSystem operatingSystem = discoClient.getOperatingSystem();
         Architecture    architecture    = Architecture.NONE;
         Bitness         bitness         = Bitness.NONE;
-        Extension       extension       = (Extension) extensionComboBox.getSelectedItem();
+        Extension       extension       = Extension.NONE;
         BundleType      bundleType      = (BundleType) bundleTypeComboBox.getSelectedItem();
         Boolean         fx              = false;
         ReleaseStatus   releaseStatus   = ReleaseStatus.NONE;
         SupportTerm     supportTerm     = SupportTerm.NONE;
-        List<Bundle>    bundles         = discoClient.getBundles(distribution, new VersionNumber(featureVersion), Latest.OVERALL, operatingSystem, architecture, bitness, extension, bundleType, fx, releaseStatus,  supportTerm);
-        List<Bundle>    sortedBundles   = bundles.stream()
-                                                 .sorted(Comparator.comparing(Bundle::getDistributionName)
-                                                                   .thenComparing(Bundle::getVersionNumber).reversed()
-                                                                   .thenComparing(Bundle::getOperatingSystem)
-                                                                   .thenComparing(Bundle::getArchitecture))
-                                                 .collect(Collectors.toList());
-        SwingUtilities.invokeLater(() -> {
-            BundleTableModel tableModel = (BundleTableModel) table.getModel();
-            tableModel.setBundles(sortedBundles);
-            tableModel.fireTableDataChanged();
-        });
+        BundleQuery     query           = new BundleQuery(distribution, new VersionNumber(featureVersion), Latest.OVERALL, operatingSystem, architecture, bitness, extension, bundleType, fx, releaseStatus,  supportTerm);
+
+        // Drop the request of a previous selection, only the latest one may update the table
+        final long          generation = ++queryGeneration;
+        final BundleBatcher batcher    = new BundleBatcher(batch -> SwingUtilities.invokeLater(() -> addBundles(generation, batch)));
+        if (null != pendingQuery) { pendingQuery.cancel(true); }
+        pendingQuery = asyncDiscoClient.getBundles(query, batcher);
+        pendingQuery.thenApply(bundles -> {
+                        batcher.flush();
+                        return BundleList.of(bundles).sorted(BundleTableModel.DEFAULT_ORDER);
+                    })
+                    .whenComplete((sortedBundles, throwable) -> SwingUtilities.invokeLater(() -> {
+                        if (generation != queryGeneration) { return; }
+                        if (null != throwable) {
+                            LOGGER.debug("Error loading bundles for {} : {}", query, throwable.getMessage());
+                            filenameLabel.setText("Loading bundles failed");
+                            filenameLabel.setToolTipText(throwable.getMessage());
+                            return;
+                        }
+                        filenameLabel.setToolTipText(null);
+                        // Cached and local results are not streamed, a broken stream or a retry may have left other rows
+                        if (generation != displayedGeneration || !tableModel.hasSameBundles(sortedBundles)) {
+                            displayedGeneration = generation;
+                            tableModel.setBundles(sortedBundles);
+                            tableModel.fireTableDataChanged();
+                        }
+                    }));
+    }
+
+    // Rows show up while the response is still being read, the first batch of a query replaces the old rows
+    private void addBundles(final long generation, final BundleStore batch) {
+        if (generation != queryGeneration) { return; }
+        if (generation != displayedGeneration) {
+            displayedGeneration = generation;
+            tableModel.clear();
+        }
+        tableModel.addBundles(batch);
     }
 
-    private void handleDCEvent(final Component parent, final DCEvent event) {
+    private void handleDCEvent(final Component parent, final Download download, final DCEvent event) {
         switch(event.getType()) {
             case DOWNLOAD_STARTED :
-                SwingUtilities.invokeLater(() -> downloadButton.setEnabled(false));
-                break;
-            case DOWNLOAD_FINISHED:
-                SwingUtilities.invokeLater(() -> {
-                    progressBar.setValue(0);
-                    downloadButton.setEnabled(true);
-                });
-                break;
             case DOWNLOAD_PROGRESS:
-                SwingUtilities.invokeLater(() -> progressBar.setValue((int) ((double) event.getFraction() / (double) event.getFileSize() * 100)));
+                // Progress of all downloads ends up in one update per frame
+                progressUpdater.update(event);
                 break;
             case DOWNLOAD_FAILED:
-                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(parent, "Download failed", "Attention", JOptionPane.WARNING_MESSAGE));
+                // A cancelled download also ends with a failed event
+                if (download.getState() == State.CANCELLED) { break; }
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(parent, "Download of " + download + " failed", "Attention", JOptionPane.WARNING_MESSAGE));
                 break;
         }
     }
 
+    // Shows the running downloads first and the queued ones in the order they will start
+    private void updateDownloadList() {
+        final Download selected = downloadList.getSelectedValue();
+        downloadListModel.clear();
+        downloadManager.getDownloads().forEach(downloadListModel::addElement);
+        if (null != selected && downloadListModel.contains(selected)) { downloadList.setSelectedValue(selected, false); }
+        updateDownloadProgress();
+    }
+
+    // The progress bar shows the progress of all running downloads together
+    private void updateDownloadProgress() {
+        long fileSize  = 0;
+        long bytesRead = 0;
+        int  running   = 0;
+        for (int i = 0 ; i < downloadListModel.size() ; i++) {
+            final Download download = downloadListModel.get(i);
+            if (download.getState() != State.RUNNING) { continue; }
+            fileSize  += download.getFileSize();
+            bytesRead += download.getBytesRead();
+            running++;
+        }
+        progressBar.setValue(fileSize > 0 ? (int) (bytesRead * 100 / fileSize) : 0);
+        progressBar.setString(downloadListModel.isEmpty() ? null : running + " running, " + (downloadListModel.size() - running) + " queued");
+        downloadList.repaint();
+    }
+
     private void downloadBundle(final Component parent) {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setCurrentDirectory(new File("."));
@@ -280,17 +419,39 @@ public class Main {
             return;
         }
 
-        Bundle         bundle         = tableModel.getBundles().get(table.getSelectedRow());
-        VersionNumber  versionNumber  = bundle.getVersionNumber();
-        BundleFileInfo bundleFileInfo = discoClient.getBundleFileInfo(bundle.getId(), versionNumber);
-        String         fileName       = destinationFolder+  File.separator + bundleFileInfo.getFileName();
+        long           bundleId       = tableModel.getId(getSelectedModelRow());
+        VersionNumber  versionNumber  = tableModel.getVersionNumber(getSelectedModelRow());
+
+        asyncDiscoClient.getBundleFileInfo(bundleId, versionNumber).whenComplete((bundleFileInfo, throwable) -> {
+            if (null == throwable && null != bundleFileInfo) {
+                final String fileName = destinationFolder + File.separator + bundleFileInfo.getFileName();
+                downloadManager.enqueue(bundleId, fileName, versionNumber, Priority.NORMAL, null);
+            } else {
+                LOGGER.debug("No file info for bundle {} : {}", bundleId, null == throwable ? "not found" : throwable.getMessage());
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(parent, "No download available for " + versionNumber, "Attention", JOptionPane.WARNING_MESSAGE));
+            }
+        });
+    }
+
+    // Narrows the rows that are already in the table, no new query
+    private void applyFilter() {
+        String vendor = vendorComboBox.getSelectedIndex() > 0 ? (String) vendorComboBox.getSelectedItem() : null;
+        rowSorter.setRowFilter(new BundleTableFilter(searchField.getText(), vendor, (ReleaseStatus) releaseStatusComboBox.getSelectedItem(),
+                                                     (Extension) extensionComboBox.getSelectedItem(), minVersionField.getText(), maxVersionField.getText()));
+    }
 
-        Future<?> future = discoClient.downloadBundle(bundle.getId(), fileName, versionNumber);
-        try {
-            assert null == future.get();
-        } catch (InterruptedException | ExecutionException e) {
+    private static DocumentListener onChange(final Runnable runnable) {
+        return new DocumentListener() {
+            @Override public void insertUpdate(final DocumentEvent e)  { runnable.run(); }
+            @Override public void removeUpdate(final DocumentEvent e)  { runnable.run(); }
+            @Override public void changedUpdate(final DocumentEvent e) { runnable.run(); }
+        };
+    }
 
-        }
+    // The selection is in view rows, the model has its rows in a different order once a column is sorted
+    private int getSelectedModelRow() {
+        final int row = table.getSelectedRow();
+        return row < 0 ? -1 : table.convertRowIndexToModel(row);
     }
 
     public static void main(String[] args) {
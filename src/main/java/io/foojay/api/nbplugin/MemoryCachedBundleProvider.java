@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import io.foojay.api.discoclient.bundle.Bundle;
+import io.foojay.api.discoclient.bundle.Release;
+import io.foojay.api.discoclient.bundle.VersionNumber;
+import io.foojay.api.discoclient.util.BundleFileInfo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+
+public class MemoryCachedBundleProvider implements BundleProvider {
+    private final BundleProvider                      delegate;
+    private final LruCache<BundleQuery, List<Bundle>> bundleCache;
+    private final LruCache<String, BundleFileInfo>    fileInfoCache;
+
+
+    public MemoryCachedBundleProvider(final BundleProvider delegate) {
+        this(delegate, PluginPropertyManager.INSTANCE.getInt(PluginPropertyManager.PROPERTY_KEY_MEMORY_CACHE_SIZE),
+             TimeUnit.SECONDS.toMillis(PluginPropertyManager.INSTANCE.getLong(PluginPropertyManager.PROPERTY_KEY_MEMORY_CACHE_MAX_AGE)));
+    }
+    public MemoryCachedBundleProvider(final BundleProvider delegate, final int maxSize, final long maxAge) {
+        this.delegate      = delegate;
+        // The discoclient returns an empty list on errors, that must not stick in the cache
+        this.bundleCache   = new LruCache<>("bundleCache", maxSize, maxAge, bundles -> null != bundles && !bundles.isEmpty());
+        this.fileInfoCache = new LruCache<>("fileInfoCache", maxSize, maxAge);
+    }
+
+
+    public CacheStats getBundleStats() { return bundleCache.getStats(); }
+
+    public CacheStats getFileInfoStats() { return fileInfoCache.getStats(); }
+
+    @Override public List<Bundle> getBundles(final BundleQuery query) {
+        return bundleCache.get(query, key -> readOnly(delegate.getBundles(key)));
+    }
+
+    // Only the caller that actually loads the query sees the bundles stream in, cache hits and coalesced callers get the complete result
+    @Override public List<Bundle> getBundles(final BundleQuery query, final ObjIntConsumer<BundleStore> consumer) {
+        return bundleCache.get(query, key -> readOnly(delegate.getBundles(key, consumer)));
+    }
+
+    @Override public BundleFileInfo getBundleFileInfo(final long bundleId, final VersionNumber versionNumber) {
+        return fileInfoCache.get(bundleId + "/" + versionNumber, key -> delegate.getBundleFileInfo(bundleId, versionNumber));
+    }
+
+    @Override public BundleFileInfo getBundleFileInfoSCDL(final long bundleId, final VersionNumber versionNumber) {
+        return fileInfoCache.get("scdl/" + bundleId + "/" + versionNumber, key -> delegate.getBundleFileInfoSCDL(bundleId, versionNumber));
+    }
+
+    @Override public Release getRelease(final String release) {
+        return delegate.getRelease(release);
+    }
+
+    private static List<Bundle> readOnly(final List<Bundle> bundles) {
+        if (null == bundles || bundles instanceof BundleList) { return bundles; }
+        return Collections.unmodifiableList(bundles);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.foojay.api.nbplugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+// Latency, payload and errors of every network call and the statistics of every cache, registered as MBeans under
+// io.foojay.api.nbplugin (jconsole, jcmd) and, while a flight recording runs, committed as JFR events
+public enum Metrics {
+    INSTANCE;
+
+    public  static final String                      GET_BUNDLES               = "getBundles";
+    public  static final String                      GET_RELEASE               = "getRelease";
+    public  static final String                      GET_BUNDLE_FILE_INFO      = "getBundleFileInfo";
+    public  static final String                      GET_BUNDLE_FILE_INFO_SCDL = "getBundleFileInfoSCDL";
+    public  static final String                      GET_OTHER                 = "getOther";
+    public  static final String                      DOWNLOAD_BUNDLE           = "downloadBundle";
+    public  static final String                      INSTALL_BUNDLE            = "installBundle";
+    private static final Logger                      LOGGER                    = LoggerFactory.getLogger(Metrics.class);
+    private static final String                      DOMAIN                    = "io.foojay.api.nbplugin";
+    private final        boolean                     jmx;
+    private final        boolean                     jfr;
+    private final        Map<String, OperationStats> operations;
+    private final        Map<String, CacheStats>     caches;
+
+
+    Metrics() {
+        jmx        = PluginPropertyManager.INSTANCE.getBoolean(PluginPropertyManager.PROPERTY_KEY_METRICS_JMX);
+        jfr        = PluginPropertyManager.INSTANCE.getBoolean(PluginPropertyManager.PROPERTY_KEY_METRICS_JFR) && isJfrAvailable();
+        operations = new ConcurrentHashMap<>();
+        caches     = new ConcurrentHashMap<>();
+    }
+
+
+    public OperationStats getOperation(final String name) {
+        return operations.computeIfAbsent(name, key -> {
+            final OperationStats stats = new OperationStats(key);
+            register("Operation", key, stats);
+            return stats;
+        });
+    }
+
+    public List<OperationStats> getOperations() { return new ArrayList<>(operations.values()); }
+
+    // All caches of one name (e.g. those of several AsyncDiscoClients) record into the same stats, which are registered once
+    public CacheStats getCache(final String name) {
+        return caches.computeIfAbsent(name, key -> {
+            final CacheStats stats = new CacheStats(key);
+            register("Cache", key, stats);
+            return stats;
+        });
+    }
+
+    public List<CacheStats> getCaches() { return new ArrayList<>(caches.values()); }
+
+    public Sample start(final String operation) { return new Sample(getOperation(operation), jfr ? JfrEvents.begin(operation) : null); }
+
+    // The operation of an api url, the file info urls end with the bundle id
+    public static String getOperationOf(final String url) {
+        final int    query = url.indexOf('?');
+        final String path  = query < 0 ? url : url.substring(0, query);
+        if (path.contains("/bundles/dl/"))                           { return GET_BUNDLE_FILE_INFO_SCDL; }
+        if (path.matches(".*/bundles/\\d+/?"))                        { return GET_BUNDLE_FILE_INFO; }
+        if (path.endsWith("/bundles") || path.endsWith("/bundles/")) { return GET_BUNDLES; }
+        if (path.contains("/releases"))                              { return GET_RELEASE; }
+        return GET_OTHER;
+    }
+
+    private void register(final String type, final String name, final Object mbean) {
+        if (!jmx) { return; }
+        try {
+            final MBeanServer server     = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName  objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            // Another copy of the plugin may have registered the name already, its MBean is left alone
+            if (server.isRegistered(objectName)) {
+                LOGGER.debug("{} {} is already registered", type, name);
+                return;
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (JMException | RuntimeException e) {
+            LOGGER.debug("Error registering {} {} : {}", type, name, e.getMessage());
+        }
+    }
+
+    // Runtimes that were linked without the jdk.jfr module simply don't get events
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+
+    // ******************** Inner classes *************************************
+    // One call, only the first stop() is recorded. A sample that is never stopped (e.g. of a cancelled call) is dropped.
+    public static class Sample {
+        private final OperationStats stats;
+        private final Object         event;
+        private final long           start;
+        private       boolean        stopped;
+
+        Sample(final OperationStats stats, final Object event) {
+            this.stats = stats;
+            this.event = event;
+            this.start = System.nanoTime();
+        }
+
+        public void stop(final long bytes, final boolean failed) {
+            if (stopped) { return; }
+            stopped = true;
+            stats.record(System.nanoTime() - start, bytes, failed);
+            if (null != event) { JfrEvents.commit(event, bytes, failed); }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.foojay.api.nbplugin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+// Calls, errors, payload and a latency histogram of one kind of network call. The histogram has power of two
+// buckets, recording is lock free and costs a few additions, the percentiles are the upper bounds of their bucket.
+public class OperationStats implements OperationStatsMBean {
+    private static final int             BUCKETS = 22;
+    private final        String          name;
+    private final        LongAdder       calls;
+    private final        LongAdder       errors;
+    private final        LongAdder       bytes;
+    private final        LongAdder       totalNanos;
+    private final        LongAccumulator maxNanos;
+    private final        LongAdder[]     histogram;
+
+
+    public OperationStats(final String name) {
+        this.name       = name;
+        this.calls      = new LongAdder();
+        this.errors     = new LongAdder();
+        this.bytes      = new LongAdder();
+        this.totalNanos = new LongAdder();
+        this.maxNanos   = new LongAccumulator(Math::max, 0);
+        this.histogram  = new LongAdder[BUCKETS];
+        for (int i = 0 ; i < BUCKETS ; i++) { histogram[i] = new LongAdder(); }
+    }
+
+
+    public void record(final long nanos, final long bytes, final boolean failed) {
+        calls.increment();
+        if (failed) { errors.increment(); }
+        if (bytes > 0) { this.bytes.add(bytes); }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        histogram[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis))].increment();
+    }
+
+    @Override public String getName() { return name; }
+
+    @Override public long getCalls() { return calls.sum(); }
+
+    @Override public long getErrors() { return errors.sum(); }
+
+    @Override public long getBytes() { return bytes.sum(); }
+
+    @Override public double getMeanMillis() {
+        final long calls = getCalls();
+        return calls == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / calls;
+    }
+
+    @Override public long getMaxMillis() { return TimeUnit.NANOSECONDS.toMillis(maxNanos.get()); }
+
+    @Override public long getP50Millis() { return getPercentile(0.5); }
+
+    @Override public long getP95Millis() { return getPercentile(0.95); }
+
+    @Override public long getP99Millis() { return getPercentile(0.99); }
+
+    @Override public long[] getHistogram() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0 ; i < BUCKETS ; i++) { counts[i] = histogram[i].sum(); }
+        return counts;
+    }
+
+    // Over the time spent in the calls, not over wall clock time, so parallel downloads don't add up
+    @Override public double getBytesPerSecond() {
+        final long nanos = totalNanos.sum();
+        return nanos == 0 ? 0 : getBytes() * 1_000_000_000.0 / nanos;
+    }
+
+    @Override public void reset() {
+        calls.reset();
+        errors.reset();
+        bytes.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (LongAdder bucket : histogram) { bucket.reset(); }
+    }
+
+    public long getPercentile(final double quantile) {
+        final long[] counts = getHistogram();
+        long         total  = 0;
+        for (long count : counts) { total += count; }
+        if (total == 0) { return 0; }
+        final long rank  = (long) Math.ceil(quantile * total);
+        long       count = 0;
+        for (int i = 0 ; i < BUCKETS ; i++) {
+            count += counts[i];
+            if (count >= rank) { return Math.min(i == 0 ? 0 : 1L << i, getMaxMillis()); }
+        }
+        return getMaxMillis();
+    }
+
+    @Override public String toString() {
+        return new StringBuilder().append(name).append("{")
+                                  .append("calls=").append(getCalls())
+                                  .append(", errors=").append(getErrors())
+                                  .append(", bytes=").append(getBytes())
+                                  .append(", mean=").append(String.format("%.1f", getMeanMillis())).append("ms")
+                                  .append(", p50=").append(getP50Millis()).append("ms")
+                                  .append(", p95=").append(getP95Millis()).append("ms")
+                                  .append(", p99=").append(getP99Millis()).append("ms")
+                                  .append(", max=").append(getMaxMillis()).append("ms")
+                                  .append("}")
+                                  .toString();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.foojay.api.nbplugin;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Properties;
+
+
+public enum PluginPropertyManager {
+    INSTANCE;
+
+    public  static final String     PROPERTY_KEY_CACHE_ENABLED           = "cache.enabled";
+    public  static final String     PROPERTY_KEY_CACHE_TTL               = "cache.ttl";
+    public  static final String     PROPERTY_KEY_MEMORY_CACHE_SIZE       = "memory.cache.size";
+    public  static final String     PROPERTY_KEY_MEMORY_CACHE_MAX_AGE    = "memory.cache.max.age";
+    public  static final String     PROPERTY_KEY_CATALOG_ENABLED         = "catalog.enabled";
+    public  static final String     PROPERTY_KEY_LOOKUP_PARALLELISM      = "lookup.parallelism";
+    public  static final String     PROPERTY_KEY_DOWNLOAD_SEGMENTS       = "download.segments";
+    public  static final String     PROPERTY_KEY_DOWNLOAD_VERIFY         = "download.verify";
+    public  static final String     PROPERTY_KEY_DOWNLOAD_MAX_CONCURRENT = "download.max.concurrent";
+    public  static final String     PROPERTY_KEY_STORE_ENABLED           = "store.enabled";
+    public  static final String     PROPERTY_KEY_STORE_MAX_SIZE          = "store.max.size";
+    public  static final String     PROPERTY_KEY_PROXY_PORT              = "proxy.port";
+    public  static final String     PROPERTY_KEY_HTTP_CONNECT_TIMEOUT    = "http.connect.timeout";
+    public  static final String     PROPERTY_KEY_HTTP_REQUEST_TIMEOUT    = "http.request.timeout";
+    public  static final String     PROPERTY_KEY_METRICS_JMX             = "metrics.jmx";
+    public  static final String     PROPERTY_KEY_METRICS_JFR             = "metrics.jfr";
+    public  static final String     PROPERTY_KEY_EDT_WATCHDOG            = "edt.watchdog";
+    public  static final String     PROPERTY_KEY_EDT_WATCHDOG_THRESHOLD  = "edt.watchdog.threshold";
+    private static final String     PROPERTIES_FILE_NAME                 = "nbplugin.properties";
+    private static final String     SYSTEM_PROPERTY_PREFIX               = "nbplugin.";
+    private final        Path       configDir;
+    private final        Properties properties;
+
+
+    PluginPropertyManager() {
+        configDir  = resolveConfigDir();
+        properties = new Properties();
+        createDefaults(properties);
+
+        Path propertiesFile = configDir.resolve(PROPERTIES_FILE_NAME);
+        if (Files.exists(propertiesFile)) {
+            try (InputStream inputStream = Files.newInputStream(propertiesFile)) {
+                properties.load(inputStream);
+            } catch (IOException e) {
+                LoggerFactory.getLogger(PluginPropertyManager.class).warn("Error reading {} : {}", propertiesFile, e.getMessage());
+            }
+        }
+    }
+
+
+    public Path getConfigDir() { return configDir; }
+
+    // System properties prefixed with "nbplugin." win over the properties file
+    public String getString(final String key) {
+        return System.getProperty(SYSTEM_PROPERTY_PREFIX + key, properties.getProperty(key, ""));
+    }
+
+    public int getInt(final String key) {
+        try {
+            return Integer.parseInt(getString(key).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public long getLong(final String key) {
+        try {
+            return Long.parseLong(getString(key).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public boolean getBoolean(final String key) { return Boolean.parseBoolean(getString(key).trim()); }
+
+    private void createDefaults(final Properties properties) {
+        properties.setProperty(PROPERTY_KEY_CACHE_ENABLED, "true");
+        properties.setProperty(PROPERTY_KEY_CACHE_TTL, "3600");
+        properties.setProperty(PROPERTY_KEY_MEMORY_CACHE_SIZE, "256");
+        properties.setProperty(PROPERTY_KEY_MEMORY_CACHE_MAX_AGE, "300");
+        properties.setProperty(PROPERTY_KEY_CATALOG_ENABLED, "true");
+        properties.setProperty(PROPERTY_KEY_LOOKUP_PARALLELISM, "3");
+        properties.setProperty(PROPERTY_KEY_DOWNLOAD_SEGMENTS, "4");
+        properties.setProperty(PROPERTY_KEY_DOWNLOAD_VERIFY, "true");
+        properties.setProperty(PROPERTY_KEY_DOWNLOAD_MAX_CONCURRENT, "3");
+        properties.setProperty(PROPERTY_KEY_STORE_ENABLED, "true");
+        properties.setProperty(PROPERTY_KEY_STORE_MAX_SIZE, "4096");
+        properties.setProperty(PROPERTY_KEY_PROXY_PORT, "8080");
+        properties.setProperty(PROPERTY_KEY_HTTP_CONNECT_TIMEOUT, "10");
+        properties.setProperty(PROPERTY_KEY_HTTP_REQUEST_TIMEOUT, "30");
+        properties.setProperty(PROPERTY_KEY_METRICS_JMX, "true");
+        properties.setProperty(PROPERTY_KEY_METRICS_JFR, "true");
+        properties.setProperty(PROPERTY_KEY_EDT_WATCHDOG, "false");
+        properties.setProperty(PROPERTY_KEY_EDT_WATCHDOG_THRESHOLD, "200");
+    }
+
+    private static Path resolveConfigDir() {
+        final String os       = System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH);
+        final String userHome = System.getProperty("user.home");
+        final Path   baseDir;
+        if (os.contains("win") && null != System.getenv("APPDATA")) {
+            baseDir = Paths.get(System.getenv("APPDATA"));
+        } else if (os.contains("mac")) {
+            baseDir = Paths.get(userHome, "Library", "Application Support");
+        } else if (null != System.getenv("XDG_CONFIG_HOME") && !System.getenv("XDG_CONFIG_HOME").isEmpty()) {
+            baseDir = Paths.get(System.getenv("XDG_CONFIG_HOME"));
+        } else {
+            baseDir = Paths.get(userHome, ".config");
+        }
+        return baseDir.resolve("foojay").resolve("nbplugin");
+    }
+}